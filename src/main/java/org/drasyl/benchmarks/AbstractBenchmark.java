@@ -2,26 +2,43 @@ package org.drasyl.benchmarks;
 
 import io.netty.util.ResourceLeakDetector;
 import io.netty.util.internal.SystemPropertyUtil;
+import org.drasyl.benchmarks.RegressionGate.Comparison;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.parallel.ResourceLock;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
 import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
 import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
 
 @Fork(AbstractBenchmark.DEFAULT_FORKS)
 @Warmup(iterations = AbstractBenchmark.DEFAULT_WARMUP_ITERATIONS)
@@ -32,6 +49,13 @@ public abstract class AbstractBenchmark {
     protected static final int DEFAULT_FORKS = 2;
     protected static final int DEFAULT_WARMUP_ITERATIONS = 10;
     protected static final int DEFAULT_MEASURE_ITERATIONS = 10;
+    static final String NETWORK_NAMESPACE_PROPERTY = "networkNamespace";
+    static final String PLACEMENT_DIR_PROPERTY = "placementDir";
+    static final String BENCHMARK_CPUS_PROPERTY = "benchmarkCpus";
+    static final int DEFAULT_BENCHMARK_CPUS = 4;
+    private static final String GC_ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+    // p-value below which a soak trend is considered significant
+    private static final double SOAK_ALPHA = 0.01;
 
     static {
         ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
@@ -51,12 +75,155 @@ public abstract class AbstractBenchmark {
     };
 
     @Test
-    // prevent parallel execution of benchmarks
-    @ResourceLock("Benchmark")
     void run() throws Exception {
-        final Collection<RunResult> runResults = new Runner(newOptionsBuilder().build()).run();
+        final Options options = newOptionsBuilder().build();
+        final List<AdaptiveRunner.ForkResult> forkResults = Collections.synchronizedList(new ArrayList<>());
+        final Collection<RunResult> runResults;
+        if (isParallel()) {
+            final int configuredCpus = SystemPropertyUtil.getInt(BENCHMARK_CPUS_PROPERTY, DEFAULT_BENCHMARK_CPUS);
+            if (getBenchmarkCpus() > configuredCpus) {
+                // CpuSetParallelism sizes the JUnit pool for the configured number of CPUs per class
+                fail(getClass().getSimpleName() + " requires " + getBenchmarkCpus() + " CPUs per run, but parallel runs are configured for " + configuredCpus + " (-D" + BENCHMARK_CPUS_PROPERTY + ")");
+            }
+            final Path logDir = Paths.get(getReportDir() != null ? getReportDir() : SystemPropertyUtil.get("java.io.tmpdir"), getClass().getSimpleName() + "-logs");
+            runResults = ParallelRunner.run(options, getBenchmarkCpus(), logDir, runOptions -> execute(runOptions, forkResults));
+        }
+        else {
+            runResults = execute(options, forkResults);
+        }
+        if (isParallel() || isAdaptive()) {
+            // JMH only prints and writes the results of regular runs itself
+            report(runResults, forkResults);
+        }
 
         assertFalse(runResults.isEmpty());
+        if (getAllocationBudget() >= 0) {
+            assertAllocationBudget(runResults, getAllocationBudget());
+        }
+        if (getSoakDuration() > 0) {
+            assertNoSoakTrend(runResults);
+        }
+        if (getReportDir() != null) {
+            TransportReport.write(Paths.get(getReportDir()));
+        }
+        if (getBaselineDir() != null) {
+            assertNoRegression(runResults);
+        }
+    }
+
+    /**
+     * Compares {@code runResults} with the baseline results of this class and fails if any
+     * benchmark regressed by more than {@link #getRegressionThreshold()}. The comparison is
+     * printed and, if a report dir is set, written to it as markdown table.
+     */
+    private void assertNoRegression(final Collection<RunResult> runResults) throws IOException {
+        final String className = getClass().getSimpleName();
+        final Path baselineFile = Paths.get(getBaselineDir(), className + ".json");
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline " + baselineFile + " found, skipping regression check.");
+            return;
+        }
+
+        final List<Comparison> comparisons = RegressionGate.compare(BenchmarkResult.read(baselineFile), BenchmarkResult.of(runResults), getRegressionThreshold());
+        final String markdown = RegressionGate.toMarkdown(comparisons);
+        System.out.println(markdown);
+        if (getReportDir() != null) {
+            Files.write(Paths.get(getReportDir() + className + ".regression.md"), markdown.getBytes(UTF_8));
+        }
+
+        if (RegressionGate.hasRegression(comparisons)) {
+            fail("Performance regressed by more than " + getRegressionThreshold() * 100 + "% compared to " + baselineFile + ":\n" + markdown);
+        }
+    }
+
+    /**
+     * Runs the benchmarks included by {@code options}, with {@link AdaptiveRunner} in adaptive
+     * mode (using the configured iterations as maximum, and adding the iterations used to
+     * {@code forkResults}).
+     */
+    private Collection<RunResult> execute(final Options options,
+                                          final List<AdaptiveRunner.ForkResult> forkResults) throws IOException, InterruptedException, RunnerException {
+        if (isAdaptive()) {
+            final AdaptiveRunner.Settings settings = new AdaptiveRunner.Settings(
+                    getAdaptiveWindow(),
+                    getAdaptiveCov(),
+                    getAdaptiveCi(),
+                    options.getWarmupIterations().orElse(DEFAULT_WARMUP_ITERATIONS),
+                    options.getMeasurementIterations().orElse(DEFAULT_MEASURE_ITERATIONS)
+            );
+            final AdaptiveRunner.Results results = AdaptiveRunner.run(options, options.getForkCount().orElse(DEFAULT_FORKS), settings);
+            forkResults.addAll(results.forkResults());
+            return results.runResults();
+        }
+        if (isParallel()) {
+            return ParallelRunner.runInOwnJvm(options);
+        }
+        return new Runner(options).run();
+    }
+
+    /**
+     * Prints {@code runResults} and, if a report dir is set, writes them to it. In adaptive mode,
+     * the iterations used are reported as well.
+     */
+    private void report(final Collection<RunResult> runResults,
+                        final List<AdaptiveRunner.ForkResult> forkResults) throws IOException {
+        final String className = getClass().getSimpleName();
+        ResultFormatFactory.getInstance(ResultFormatType.TEXT, System.out).writeOut(runResults);
+        if (getReportDir() != null) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, getReportDir() + className + ".json").writeOut(runResults);
+        }
+
+        if (isAdaptive()) {
+            final String markdown = AdaptiveRunner.toMarkdown(forkResults);
+            System.out.println(markdown);
+            if (getReportDir() != null) {
+                Files.write(Paths.get(getReportDir() + className + ".adaptive.md"), markdown.getBytes(UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Fails if the score of any benchmark decayed or its memory usage grew significantly during
+     * the soak run, see {@link SoakCheck}. All samples and trends are printed and, if a report
+     * dir is set, written to it.
+     */
+    private void assertNoSoakTrend(final Collection<RunResult> runResults) throws IOException {
+        final List<SoakCheck.Trend> trends = new ArrayList<>();
+        for (final RunResult runResult : runResults) {
+            trends.addAll(SoakCheck.analyze(runResult, SOAK_ALPHA, getSoakThreshold(), getSoakMemoryThreshold()));
+        }
+        final String markdown = SoakCheck.toMarkdown(trends);
+        System.out.println(markdown);
+        if (getReportDir() != null) {
+            final String className = getClass().getSimpleName();
+            Files.write(Paths.get(getReportDir() + className + ".soak.md"), markdown.getBytes(UTF_8));
+            Files.write(Paths.get(getReportDir() + className + ".soak.csv"), SoakCheck.toCsv(trends).getBytes(UTF_8));
+        }
+
+        if (SoakCheck.hasViolation(trends)) {
+            fail("Score decayed by more than " + getSoakThreshold() * 100 + "% or memory grew by more than " + getSoakMemoryThreshold() + " B during soak run:\n" + markdown);
+        }
+    }
+
+    /**
+     * Fails if any benchmark allocated more than {@code budget} bytes per operation (i.e. per
+     * packet for the read and write benchmarks) according to {@link GCProfiler}.
+     */
+    static void assertAllocationBudget(final Collection<RunResult> runResults, final double budget) {
+        final StringBuilder violations = new StringBuilder();
+        for (final RunResult runResult : runResults) {
+            final Result<?> allocated = runResult.getAggregatedResult().getSecondaryResults().get(GC_ALLOC_RATE_NORM);
+            if (allocated == null) {
+                fail("No " + GC_ALLOC_RATE_NORM + " result for " + runResult.getParams().getBenchmark());
+            }
+            else if (allocated.getScore() > budget) {
+                violations.append(String.format("%n  %s (%s): %.1f %s", runResult.getParams().getBenchmark(), BenchmarkResult.of(runResult).paramsString(), allocated.getScore(), allocated.getScoreUnit()));
+            }
+        }
+
+        if (violations.length() > 0) {
+            fail("Allocation budget of " + budget + " B/op exceeded:" + violations);
+        }
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -83,24 +250,130 @@ public abstract class AbstractBenchmark {
             runnerOptions.timeout(TimeValue.minutes(getTimeout()));
         }
 
+        if (getSoakDuration() > 0) {
+            // one long fork sampled every interval, so trends are not hidden by fork restarts
+            runnerOptions.forks(1)
+                    .measurementIterations((int) Math.max(3, getSoakDuration() * 60 / getSoakInterval()))
+                    .measurementTime(TimeValue.seconds(getSoakInterval()))
+                    .addProfiler(SoakProfiler.class);
+        }
+
+        for (final Map.Entry<String, String[]> param : getParams().entrySet()) {
+            runnerOptions.param(param.getKey(), param.getValue());
+        }
+
         if (getReportDir() != null) {
             final String filePath = getReportDir() + className + ".json";
             final File file = new File(filePath);
+            // JMH creates the file once the run is complete, an empty file would not be readable
             if (file.exists()) {
                 file.delete();
             }
             else {
                 file.getParentFile().mkdirs();
-                file.createNewFile();
             }
 
-            runnerOptions.resultFormat(ResultFormatType.JSON);
-            runnerOptions.result(filePath);
+            if (!isAdaptive() && !isParallel()) {
+                runnerOptions.resultFormat(ResultFormatType.JSON);
+                runnerOptions.result(filePath);
+            }
+        }
+
+        runnerOptions.addProfiler(GaugeProfiler.class);
+
+        if (getAllocationBudget() >= 0 || profileGc()) {
+            runnerOptions.addProfiler(GCProfiler.class);
+        }
+
+        if (profileProc()) {
+            runnerOptions.addProfiler(ProcProfiler.class);
+        }
+
+        // JMH replaces previously appended JVM args, so collect them first
+        final List<String> jvmArgsAppend = new ArrayList<>();
+        if (recordJfr()) {
+            // with a directory as filename, each fork dumps its recording to a file named by its pid
+            final Path jfrDir = Paths.get(getReportDir() != null ? getReportDir() : SystemPropertyUtil.get("java.io.tmpdir"), className + "-jfr");
+            Files.createDirectories(jfrDir);
+            jvmArgsAppend.add("-XX:StartFlightRecording=settings=" + getJfrSettings() + ",filename=" + jfrDir.toAbsolutePath() + File.separator);
+        }
+
+        if (isNetworkNamespace()) {
+            jvmArgsAppend.add("-D" + NETWORK_NAMESPACE_PROPERTY + "=true");
+        }
+
+        if (getReportDir() != null) {
+            // forks record their thread placements and topology next to the results, see CpuTopology
+            final Path placementDir = Paths.get(getReportDir(), className + "-placement");
+            Files.createDirectories(placementDir);
+            jvmArgsAppend.add("-D" + PLACEMENT_DIR_PROPERTY + "=" + placementDir.toAbsolutePath());
+        }
+
+        if (!jvmArgsAppend.isEmpty()) {
+            runnerOptions.jvmArgsAppend(jvmArgsAppend.toArray(new String[0]));
         }
 
         return runnerOptions;
     }
 
+    /**
+     * Clears the values published to {@link GaugeProfiler}, so a trial does not report values of
+     * an earlier trial run in the same JVM. Runs before the trial setups of subclasses.
+     */
+    @Setup(Level.Trial)
+    public void clearGauges() {
+        GaugeProfiler.clear();
+    }
+
+    /**
+     * Moves the benchmark thread into a new network namespace before the benchmark's own setup
+     * creates the TUN device, assigns its addresses and starts its event loops, see
+     * {@link #isNetworkNamespace()}.
+     */
+    @Setup(Level.Trial)
+    public void enterNetworkNamespace() {
+        try {
+            if (isNetworkNamespace()) {
+                NetworkNamespace.enter();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if {@link GCProfiler} should be added even without an allocation
+     * budget.
+     */
+    protected boolean profileGc() {
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if {@link ProcProfiler} should be added to report syscalls, context
+     * switches and CPU time per operation (Linux only).
+     */
+    protected boolean profileProc() {
+        return SystemPropertyUtil.getBoolean("procProfiler", false);
+    }
+
+    /**
+     * Returns {@code true} if each fork should record a JFR file to
+     * {@code <reportDir>/<benchmark>-jfr/}.
+     */
+    protected boolean recordJfr() {
+        return SystemPropertyUtil.getBoolean("jfrRecording", false);
+    }
+
+    /**
+     * Returns the JFR settings used by {@link #recordJfr()}, e.g. {@code profile} or
+     * {@code default}.
+     */
+    protected String getJfrSettings() {
+        return SystemPropertyUtil.get("jfrSettings", "profile");
+    }
+
     protected String[] jvmArgs() {
         return BASE_JVM_ARGS;
     }
@@ -121,6 +394,136 @@ public abstract class AbstractBenchmark {
         return SystemPropertyUtil.getInt("timeout", -1);
     }
 
+    /**
+     * Returns the maximum number of bytes allowed to be allocated per operation, or {@code -1} if
+     * allocations are not checked.
+     */
+    protected double getAllocationBudget() {
+        return Double.parseDouble(SystemPropertyUtil.get("allocationBudget", "-1"));
+    }
+
+    /**
+     * Returns the directory containing the baseline JMH JSON result files (one per class, as
+     * written to {@link #getReportDir()}), or {@code null} if results are not compared.
+     */
+    protected String getBaselineDir() {
+        return SystemPropertyUtil.get("perfBaselineDir");
+    }
+
+    /**
+     * Returns the relative score change (e.g. {@code 0.05} for 5%) beyond which a result is
+     * considered a regression.
+     */
+    protected double getRegressionThreshold() {
+        return Double.parseDouble(SystemPropertyUtil.get("regressionThreshold", "0.05"));
+    }
+
+    /**
+     * Returns the soak duration per benchmark/param combination in minutes, or {@code -1} if soak
+     * mode is disabled.
+     */
+    protected long getSoakDuration() {
+        return SystemPropertyUtil.getLong("soakDuration", -1);
+    }
+
+    /**
+     * Returns the soak sampling interval (i.e. the measurement iteration time) in seconds.
+     */
+    protected int getSoakInterval() {
+        return SystemPropertyUtil.getInt("soakInterval", 10);
+    }
+
+    /**
+     * Returns the relative score decay over a soak run (e.g. {@code 0.05} for 5%) beyond which a
+     * significant downward trend fails the run.
+     */
+    protected double getSoakThreshold() {
+        return Double.parseDouble(SystemPropertyUtil.get("soakThreshold", "0.05"));
+    }
+
+    /**
+     * Returns the memory growth over a soak run in bytes beyond which a significant upward trend
+     * fails the run.
+     */
+    protected long getSoakMemoryThreshold() {
+        return SystemPropertyUtil.getLong("soakMemoryThreshold", 16 * 1024 * 1024);
+    }
+
+    /**
+     * Returns {@code true} if warmup and measurement should end as soon as the results are
+     * stable, see {@link AdaptiveRunner}. Ignored in soak mode.
+     */
+    protected boolean isAdaptive() {
+        return SystemPropertyUtil.getBoolean("adaptive", false) && getSoakDuration() <= 0;
+    }
+
+    /**
+     * Returns the number of iterations the coefficient of variation ending the warmup is computed
+     * over in adaptive mode.
+     */
+    protected int getAdaptiveWindow() {
+        return SystemPropertyUtil.getInt("adaptiveWindow", 5);
+    }
+
+    /**
+     * Returns the coefficient of variation (e.g. {@code 0.02} for 2%) at which warmup ends in
+     * adaptive mode.
+     */
+    protected double getAdaptiveCov() {
+        return Double.parseDouble(SystemPropertyUtil.get("adaptiveCov", "0.02"));
+    }
+
+    /**
+     * Returns the confidence interval half-width relative to the score (e.g. {@code 0.02} for
+     * 2%) at which measurement ends in adaptive mode.
+     */
+    protected double getAdaptiveCi() {
+        return Double.parseDouble(SystemPropertyUtil.get("adaptiveCi", "0.02"));
+    }
+
+    /**
+     * Returns {@code true} if the benchmark/param combinations should run in parallel, each on
+     * {@link #getBenchmarkCpus()} CPUs of its own, see {@link ParallelRunner}. Implies
+     * {@link #isNetworkNamespace()}.
+     */
+    protected boolean isParallel() {
+        return SystemPropertyUtil.getBoolean("parallelBenchmarks", false);
+    }
+
+    /**
+     * Returns the number of CPUs each benchmark/param combination gets in parallel mode. Overrides
+     * must not exceed the {@code benchmarkCpus} property, which
+     * {@link CpuSetParallelism} sizes the number of concurrently running classes by.
+     */
+    protected int getBenchmarkCpus() {
+        return SystemPropertyUtil.getInt(BENCHMARK_CPUS_PROPERTY, DEFAULT_BENCHMARK_CPUS);
+    }
+
+    /**
+     * Returns {@code true} if each fork should create its TUN device, addresses and routes in a
+     * network namespace of its own (Linux only), so they do not collide with those of benchmarks
+     * running concurrently.
+     */
+    protected boolean isNetworkNamespace() {
+        return SystemPropertyUtil.getBoolean(NETWORK_NAMESPACE_PROPERTY, false) || isParallel();
+    }
+
+    /**
+     * Returns the param values overriding the {@code @Param} annotations, given as
+     * {@code name=value1,value2;name2=value3}.
+     */
+    protected Map<String, String[]> getParams() {
+        final Map<String, String[]> params = new LinkedHashMap<>();
+        final String value = SystemPropertyUtil.get("jmhParams", "");
+        for (final String param : value.split(";")) {
+            final int separator = param.indexOf('=');
+            if (separator > 0) {
+                params.put(param.substring(0, separator).trim(), param.substring(separator + 1).trim().split(","));
+            }
+        }
+        return params;
+    }
+
     protected String getReportDir() {
         return SystemPropertyUtil.get("perfReportDir");
     }
@@ -0,0 +1,498 @@
+package org.drasyl.benchmarks;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.CompilerHints;
+import org.openjdk.jmh.runner.IterationType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.WorkloadParams;
+import org.openjdk.jmh.runner.format.OutputFormat;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Runs benchmarks with an adaptive number of iterations, as JMH itself only supports fixed
+ * iteration counts. Like JMH, every fork of every benchmark/param combination is a fresh JVM
+ * started with the benchmark's JVM args and JMH's compiler hints. JMH cannot end a trial early, so
+ * the fork runs JMH in-process ({@code forks = 0}) for a series of short trials of
+ * {@code window} iterations each, deciding after each trial whether
+ * <ul>
+ * <li>warmup ends once the coefficient of variation of the last {@code window} iterations is at
+ * most {@code cov}</li>
+ * <li>measurement ends once the relative half-width of the 99.9% confidence interval (as used
+ * for JMH's score error) is at most {@code ci}</li>
+ * </ul>
+ * The JIT and heap state carry over from one trial to the next, while the benchmark's state is
+ * set up and torn down per trial. Both phases are capped by the configured iteration counts, so an
+ * adaptive run never takes longer than a regular one. The iterations actually used are reported in
+ * the returned {@link RunResult}s' params.
+ */
+public final class AdaptiveRunner {
+    static final double CONFIDENCE = 0.999;
+    static final int MIN_MEASUREMENTS = 3;
+
+    private AdaptiveRunner() {
+        // util class
+    }
+
+    /**
+     * Runs all benchmarks included by {@code options} in {@code forks} forked JVMs per
+     * benchmark/param combination. Their output is appended to the output file of {@code options}
+     * if set.
+     *
+     * @return results of all benchmark/param combinations, and the iterations used per fork
+     */
+    static Results run(final Options options,
+                       final int forks,
+                       final Settings settings) throws IOException, InterruptedException {
+        if (settings.maxMeasurements() < 1) {
+            throw new IllegalArgumentException("Adaptive runs require at least one measurement iteration");
+        }
+
+        final Path dir = Files.createTempDirectory("adaptive");
+        final OutputFormat silent = OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT);
+        final Set<BenchmarkListEntry> entries = BenchmarkList.defaultList().find(silent, options.getIncludes(), options.getExcludes());
+        final List<RunResult> runResults = new ArrayList<>();
+        final List<ForkResult> allForkResults = new ArrayList<>();
+        int run = 0;
+        for (final BenchmarkListEntry entry : entries) {
+            for (final Map<String, String> params : paramCombinations(entry, options)) {
+                final ChainedOptionsBuilder builder = only(options, entry, entries);
+                params.forEach(builder::param);
+                final Path optionsFile = dir.resolve("run-" + ++run + ".bin");
+                try (final ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(optionsFile))) {
+                    out.writeObject(builder.build());
+                    out.writeObject(settings);
+                }
+
+                final List<ForkResult> results = new ArrayList<>();
+                for (int fork = 1; fork <= forks; fork++) {
+                    final Path resultFile = dir.resolve("run-" + run + "-fork-" + fork + ".bin");
+                    final ProcessBuilder processBuilder = new ProcessBuilder(forkCommand(options, entry, optionsFile, resultFile)).inheritIO();
+                    if (options.getOutput().hasValue()) {
+                        processBuilder.redirectErrorStream(true).redirectOutput(Redirect.appendTo(new File(options.getOutput().get())));
+                    }
+                    final int exitCode = processBuilder.start().waitFor();
+                    if (exitCode != 0) {
+                        throw new IOException("Adaptive fork " + fork + " of " + entry.getUsername() + ' ' + params + " failed with exit code " + exitCode);
+                    }
+                    results.add(readForkResult(resultFile));
+                }
+
+                int warmups = 0;
+                int measurements = 0;
+                for (final ForkResult result : results) {
+                    warmups = Math.max(warmups, result.warmups());
+                    measurements = Math.max(measurements, result.measurements().size());
+                }
+                final BenchmarkParams benchmarkParams = withIterations(results.get(0).params(), results.size(), warmups, measurements);
+                final List<BenchmarkResult> benchmarkResults = new ArrayList<>();
+                for (final ForkResult result : results) {
+                    benchmarkResults.add(new BenchmarkResult(benchmarkParams, result.measurements()));
+                }
+                runResults.add(new RunResult(benchmarkParams, benchmarkResults));
+                allForkResults.addAll(results);
+            }
+        }
+        return new Results(runResults, allForkResults);
+    }
+
+    /**
+     * Returns the command starting a fork of {@code entry}, with the JVM args of {@code options}
+     * (or the entry's {@code @Fork} annotation) and JMH's compiler hints, as JMH does for its own
+     * forks.
+     */
+    private static List<String> forkCommand(final Options options,
+                                            final BenchmarkListEntry entry,
+                                            final Path optionsFile,
+                                            final Path resultFile) {
+        final List<String> command = new ArrayList<>();
+        command.add(options.getJvm().orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(options.getJvmArgsPrepend().orElse(entry.getJvmArgsPrepend().orElse(Collections.emptyList())));
+        command.addAll(options.getJvmArgs().orElse(entry.getJvmArgs().orElse(Collections.emptyList())));
+        command.addAll(options.getJvmArgsAppend().orElse(entry.getJvmArgsAppend().orElse(Collections.emptyList())));
+        CompilerHints.addCompilerHints(command);
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), AdaptiveRunner.class.getName(), optionsFile.toString(), resultFile.toString()));
+        return command;
+    }
+
+    private static ForkResult readForkResult(final Path file) throws IOException {
+        try (final ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file))) {
+            return (ForkResult) in.readObject();
+        }
+        catch (final ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns {@code params} with the given fork and iteration counts, as the params reported by
+     * the in-process runs describe a single iteration.
+     */
+    static BenchmarkParams withIterations(final BenchmarkParams params,
+                                          final int forks,
+                                          final int warmups,
+                                          final int measurements) {
+        final WorkloadParams workloadParams = new WorkloadParams();
+        int order = 0;
+        for (final Object key : params.getParamsKeys()) {
+            workloadParams.put((String) key, params.getParam((String) key), order++);
+        }
+        final IterationParams measurement = params.getMeasurement();
+        @SuppressWarnings("unchecked") final Collection<String> threadGroupLabels = params.getThreadGroupLabels();
+        @SuppressWarnings("unchecked") final Collection<String> jvmArgs = params.getJvmArgs();
+        return new BenchmarkParams(params.getBenchmark(), params.generatedBenchmark(), params.shouldSynchIterations(),
+                params.getThreads(), params.getThreadGroups(), threadGroupLabels, forks, 0,
+                new IterationParams(IterationType.WARMUP, warmups, measurement.getTime(), measurement.getBatchSize()),
+                new IterationParams(IterationType.MEASUREMENT, measurements, measurement.getTime(), measurement.getBatchSize()),
+                params.getMode(), workloadParams, params.getTimeUnit(), params.getOpsPerInvocation(),
+                params.getJvm(), jvmArgs, params.getJdkVersion(), params.getVmName(), params.getVmVersion(),
+                params.getJmhVersion(), params.getTimeout());
+    }
+
+    /**
+     * Entry point of the forked JVMs: {@code <optionsFile> <resultFile>}, where the options include
+     * a single benchmark/param combination.
+     */
+    public static void main(final String[] args) throws IOException, ClassNotFoundException, RunnerException {
+        final Options options;
+        final Settings settings;
+        try (final ObjectInputStream in = new ObjectInputStream(Files.newInputStream(Paths.get(args[0])))) {
+            options = (Options) in.readObject();
+            settings = (Settings) in.readObject();
+        }
+        final OutputFormat outputFormat = OutputFormatFactory.createFormatInstance(System.out, options.verbosity().orElse(VerboseMode.NORMAL));
+
+        final ForkResult result = runAdaptive(options, settings, outputFormat);
+
+        try (final ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(Paths.get(args[1])))) {
+            out.writeObject(result);
+        }
+        // benchmarks may leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    /**
+     * Runs short trials of up to {@code window} iterations until warmup and measurement are
+     * complete.
+     */
+    private static ForkResult runAdaptive(final Options options,
+                                          final Settings settings,
+                                          final OutputFormat outputFormat) throws RunnerException {
+        final List<Double> warmupScores = new ArrayList<>();
+        double cov = Double.NaN;
+        while (warmupScores.size() < settings.maxWarmups() && !(cov <= settings.cov())) {
+            final int iterations = Math.min(settings.window(), settings.maxWarmups() - warmupScores.size());
+            for (final IterationResult result : runTrial(options, iterations, outputFormat).getIterationResults()) {
+                warmupScores.add(result.getPrimaryResult().getScore());
+            }
+            if (warmupScores.size() >= settings.window()) {
+                cov = coefficientOfVariation(warmupScores.subList(warmupScores.size() - settings.window(), warmupScores.size()));
+            }
+        }
+
+        BenchmarkParams params = null;
+        final List<IterationResult> measurements = new ArrayList<>();
+        final List<Double> measuredScores = new ArrayList<>();
+        double ci = Double.NaN;
+        while (measurements.size() < settings.maxMeasurements() && !(ci <= settings.ci())) {
+            // the first trial has to provide enough measurements for a confidence interval
+            final int iterations = Math.min(Math.max(settings.window(), MIN_MEASUREMENTS), settings.maxMeasurements() - measurements.size());
+            final BenchmarkResult trial = runTrial(options, iterations, outputFormat);
+            params = trial.getParams();
+            for (final IterationResult result : trial.getIterationResults()) {
+                measurements.add(result);
+                measuredScores.add(result.getPrimaryResult().getScore());
+            }
+            if (measuredScores.size() >= MIN_MEASUREMENTS) {
+                ci = relativeConfidenceInterval(measuredScores);
+            }
+        }
+        return new ForkResult(params, warmupScores.size(), cov, cov <= settings.cov(), measurements, ci, ci <= settings.ci());
+    }
+
+    /**
+     * Runs a single in-process trial of {@code iterations} measurement iterations, including its
+     * trial level setup and teardown.
+     */
+    private static BenchmarkResult runTrial(final Options options,
+                                            final int iterations,
+                                            final OutputFormat outputFormat) throws RunnerException {
+        final Options trialOptions = new OptionsBuilder()
+                .parent(options)
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(iterations)
+                .shouldFailOnError(true)
+                .build();
+        final Collection<RunResult> runResults = new Runner(trialOptions, outputFormat).run();
+        return runResults.iterator().next().getBenchmarkResults().iterator().next();
+    }
+
+    /**
+     * Returns a builder for options that run only {@code entry} out of {@code entries}. The
+     * includes of derived options are merged with those of their parent, so all other entries are
+     * excluded explicitly.
+     */
+    static ChainedOptionsBuilder only(final Options options,
+                                      final BenchmarkListEntry entry,
+                                      final Collection<BenchmarkListEntry> entries) {
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(options)
+                .mode(entry.getMode());
+        for (final BenchmarkListEntry other : entries) {
+            if (!other.getUsername().equals(entry.getUsername())) {
+                builder.exclude("^" + Pattern.quote(other.getUsername()) + "$");
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Returns all combinations of the params of {@code entry}, overridden by {@code options}.
+     */
+    static List<Map<String, String>> paramCombinations(final BenchmarkListEntry entry,
+                                                       final Options options) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (final Map.Entry<String, String[]> param : entry.getParams().orElse(Collections.emptyMap()).entrySet()) {
+            final Collection<String> values = options.getParameter(param.getKey()).orElse(Arrays.asList(param.getValue()));
+            final List<Map<String, String>> expanded = new ArrayList<>();
+            for (final Map<String, String> combination : combinations) {
+                for (final String value : values) {
+                    final Map<String, String> copy = new LinkedHashMap<>(combination);
+                    copy.put(param.getKey(), value);
+                    expanded.add(copy);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    static double coefficientOfVariation(final List<Double> samples) {
+        final double mean = mean(samples);
+        return Math.sqrt(variance(samples, mean)) / Math.abs(mean);
+    }
+
+    /**
+     * Returns the half-width of the {@link #CONFIDENCE} interval of the mean of
+     * {@code samples} relative to the mean.
+     */
+    static double relativeConfidenceInterval(final List<Double> samples) {
+        final double mean = mean(samples);
+        final double t = new TDistribution(samples.size() - 1.0).inverseCumulativeProbability(1 - (1 - CONFIDENCE) / 2);
+        return t * Math.sqrt(variance(samples, mean) / samples.size()) / Math.abs(mean);
+    }
+
+    private static double mean(final List<Double> samples) {
+        double sum = 0;
+        for (final double sample : samples) {
+            sum += sample;
+        }
+        return sum / samples.size();
+    }
+
+    private static double variance(final List<Double> samples, final double mean) {
+        double sum = 0;
+        for (final double sample : samples) {
+            sum += (sample - mean) * (sample - mean);
+        }
+        return sum / (samples.size() - 1);
+    }
+
+    /**
+     * Returns the iterations used per fork as markdown table.
+     */
+    static String toMarkdown(final List<ForkResult> forkResults) {
+        final StringBuilder markdown = new StringBuilder()
+                .append("| Benchmark | Params | Warmup | CoV | Settled | Measurement | CI | Converged |\n")
+                .append("|---|---|---:|---:|---|---:|---:|---|\n");
+        for (final ForkResult result : forkResults) {
+            final org.drasyl.benchmarks.BenchmarkResult summary = org.drasyl.benchmarks.BenchmarkResult.of(new RunResult(result.params(), Collections.singletonList(new BenchmarkResult(result.params(), result.measurements()))));
+            markdown.append("| ").append(summary.simpleBenchmark())
+                    .append(" | ").append(summary.paramsString())
+                    .append(" | ").append(result.warmups())
+                    .append(" | ").append(String.format("%.2f%%", result.cov() * 100))
+                    .append(" | ").append(result.settled() ? "yes" : "no")
+                    .append(" | ").append(result.measurements().size())
+                    .append(" | ").append(String.format("%.2f%%", result.ci() * 100))
+                    .append(" | ").append(result.converged() ? "yes" : "no")
+                    .append(" |\n");
+        }
+        return markdown.toString();
+    }
+
+    static final class Settings implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int window;
+        private final double cov;
+        private final double ci;
+        private final int maxWarmups;
+        private final int maxMeasurements;
+
+        /**
+         * @param window          number of iterations the warmup CoV is computed over
+         * @param cov             CoV at which warmup ends
+         * @param ci              relative confidence interval half-width at which measurement
+         *                        ends
+         * @param maxWarmups      maximum number of warmup iterations
+         * @param maxMeasurements maximum number of measurement iterations
+         */
+        Settings(final int window,
+                 final double cov,
+                 final double ci,
+                 final int maxWarmups,
+                 final int maxMeasurements) {
+            this.window = window;
+            this.cov = cov;
+            this.ci = ci;
+            this.maxWarmups = maxWarmups;
+            this.maxMeasurements = maxMeasurements;
+        }
+
+        int window() {
+            return window;
+        }
+
+        double cov() {
+            return cov;
+        }
+
+        double ci() {
+            return ci;
+        }
+
+        int maxWarmups() {
+            return maxWarmups;
+        }
+
+        int maxMeasurements() {
+            return maxMeasurements;
+        }
+    }
+
+    /**
+     * Result of one benchmark/param combination in one fork.
+     */
+    static final class ForkResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final BenchmarkParams params;
+        private final int warmups;
+        private final double cov;
+        private final boolean settled;
+        private final List<IterationResult> measurements;
+        private final double ci;
+        private final boolean converged;
+
+        @SuppressWarnings("java:S107")
+        ForkResult(final BenchmarkParams params,
+                   final int warmups,
+                   final double cov,
+                   final boolean settled,
+                   final List<IterationResult> measurements,
+                   final double ci,
+                   final boolean converged) {
+            this.params = params;
+            this.warmups = warmups;
+            this.cov = cov;
+            this.settled = settled;
+            this.measurements = measurements;
+            this.ci = ci;
+            this.converged = converged;
+        }
+
+        String key() {
+            return params.id();
+        }
+
+        BenchmarkParams params() {
+            return params;
+        }
+
+        int warmups() {
+            return warmups;
+        }
+
+        /**
+         * Returns the CoV of the last warmup window, or {@link Double#NaN} if there were fewer
+         * warmup iterations than the window.
+         */
+        double cov() {
+            return cov;
+        }
+
+        List<IterationResult> measurements() {
+            return measurements;
+        }
+
+        /**
+         * Returns the relative confidence interval half-width of the measurements.
+         */
+        double ci() {
+            return ci;
+        }
+
+        /**
+         * Returns {@code true} if the warmup ended because the CoV settled.
+         */
+        boolean settled() {
+            return settled;
+        }
+
+        /**
+         * Returns {@code true} if the measurement ended because the confidence interval was
+         * tight enough.
+         */
+        boolean converged() {
+            return converged;
+        }
+    }
+
+    static final class Results {
+        private final List<RunResult> runResults;
+        private final List<ForkResult> forkResults;
+
+        Results(final List<RunResult> runResults, final List<ForkResult> forkResults) {
+            this.runResults = runResults;
+            this.forkResults = forkResults;
+        }
+
+        List<RunResult> runResults() {
+            return runResults;
+        }
+
+        List<ForkResult> forkResults() {
+            return forkResults;
+        }
+    }
+}
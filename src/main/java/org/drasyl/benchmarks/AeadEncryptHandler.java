@@ -0,0 +1,144 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encrypts the content of every inbound IPv4 {@link ByteBufHolder} (i.e. a TUN packet) with an
+ * AEAD cipher and passes the resulting ciphertext (including the authentication tag) as
+ * {@link ByteBuf} to the next handler. Other messages (e.g. IPv6 packets) are passed on untouched,
+ * so only the packets counted by the read benchmarks are encrypted.
+ */
+@SuppressWarnings("java:S112")
+public class AeadEncryptHandler extends ChannelInboundHandlerAdapter {
+    public static final String CHACHA20_POLY1305 = "ChaCha20-Poly1305";
+    public static final String AES_GCM = "AES-GCM";
+    static final int KEY_LENGTH = 32;
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+    private final String algorithm;
+    private final Mode mode;
+    private final SecretKey key;
+    // cipher of REUSE mode, not shared with other handlers as the handler is bound to one event loop
+    private Cipher cipher;
+    // nonces must never repeat for a key, JCA refuses to re-init a cipher with the same nonce
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private long counter;
+
+    public AeadEncryptHandler(final String algorithm, final Mode mode, final byte[] key) {
+        this.algorithm = requireNonNull(algorithm);
+        this.mode = requireNonNull(mode);
+        if (CHACHA20_POLY1305.equals(algorithm)) {
+            this.key = new SecretKeySpec(key, "ChaCha20");
+        }
+        else if (AES_GCM.equals(algorithm)) {
+            this.key = new SecretKeySpec(key, "AES");
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (msg instanceof ByteBufHolder && isIpv4(((ByteBufHolder) msg).content())) {
+            try {
+                ctx.fireChannelRead(encrypt(ctx, ((ByteBufHolder) msg).content()));
+            }
+            catch (final GeneralSecurityException e) {
+                ctx.fireExceptionCaught(e);
+            }
+            finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+        else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private ByteBuf encrypt(final ChannelHandlerContext ctx,
+                            final ByteBuf plaintext) throws GeneralSecurityException {
+        final int ciphertextLength = plaintext.readableBytes() + TAG_LENGTH;
+        if (mode == Mode.HEAP) {
+            final Cipher c = newCipher();
+            c.init(Cipher.ENCRYPT_MODE, key, nextNonce());
+            return Unpooled.wrappedBuffer(c.doFinal(ByteBufUtil.getBytes(plaintext)));
+        }
+
+        final Cipher c;
+        if (mode == Mode.REUSE) {
+            if (cipher == null) {
+                cipher = newCipher();
+            }
+            c = cipher;
+        }
+        else {
+            c = newCipher();
+        }
+        c.init(Cipher.ENCRYPT_MODE, key, nextNonce());
+        // Cipher.doFinal(ByteBuffer, ByteBuffer) is copy-safe, so input and output may overlap
+        final boolean inPlace = plaintext.isDirect() && plaintext.writableBytes() >= TAG_LENGTH && plaintext.refCnt() == 1;
+        final ByteBuf ciphertext = inPlace ? plaintext.retain() : ctx.alloc().directBuffer(ciphertextLength);
+        final int index = inPlace ? plaintext.readerIndex() : 0;
+        try {
+            final ByteBuffer out = ciphertext.internalNioBuffer(index, ciphertextLength);
+            c.doFinal(plaintext.nioBuffer(), out);
+            return ciphertext.writerIndex(index + ciphertextLength);
+        }
+        catch (final GeneralSecurityException | RuntimeException e) {
+            ciphertext.release();
+            throw e;
+        }
+    }
+
+    private static boolean isIpv4(final ByteBuf content) {
+        return content.isReadable() && Ip4Header.version(content, content.readerIndex()) == 4;
+    }
+
+    private Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(CHACHA20_POLY1305.equals(algorithm) ? "ChaCha20-Poly1305" : "AES/GCM/NoPadding");
+    }
+
+    private AlgorithmParameterSpec nextNonce() {
+        final long value = ++counter;
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[NONCE_LENGTH - 1 - i] = (byte) (value >>> (8 * i));
+        }
+        return CHACHA20_POLY1305.equals(algorithm) ? new IvParameterSpec(nonce) : new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    public enum Mode {
+        /**
+         * New {@link Cipher} per packet, plaintext copied to and ciphertext returned as
+         * {@code byte[]}.
+         */
+        HEAP,
+        /**
+         * New {@link Cipher} per packet, {@link Cipher#doFinal(ByteBuffer, ByteBuffer)} in place
+         * into the packet's buffer if it is direct, not shared and has room for the tag behind the
+         * packet. Otherwise, into a pooled direct buffer.
+         */
+        DIRECT,
+        /**
+         * Like {@link #DIRECT}, but the {@link Cipher} is created once per handler.
+         */
+        REUSE
+    }
+}
@@ -0,0 +1,167 @@
+package org.drasyl.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Primary result of one benchmark/param combination, either read from a JMH JSON result file or
+ * taken from a {@link RunResult}.
+ */
+final class BenchmarkResult {
+    private final String benchmark;
+    private final String mode;
+    private final Map<String, String> params;
+    private final double score;
+    private final double scoreError;
+    private final String scoreUnit;
+
+    BenchmarkResult(final String benchmark,
+                    final String mode,
+                    final Map<String, String> params,
+                    final double score,
+                    final double scoreError,
+                    final String scoreUnit) {
+        this.benchmark = benchmark;
+        this.mode = mode;
+        this.params = Collections.unmodifiableMap(new TreeMap<>(params));
+        this.score = score;
+        // JMH reports NaN if there are too few iterations to compute an error
+        this.scoreError = Double.isNaN(scoreError) ? 0 : scoreError;
+        this.scoreUnit = scoreUnit;
+    }
+
+    static BenchmarkResult of(final RunResult runResult) {
+        final BenchmarkParams benchmarkParams = runResult.getParams();
+        final Map<String, String> params = new TreeMap<>();
+        for (final String key : benchmarkParams.getParamsKeys()) {
+            params.put(key, benchmarkParams.getParam(key));
+        }
+        final Result<?> primary = runResult.getPrimaryResult();
+        return new BenchmarkResult(benchmarkParams.getBenchmark(), benchmarkParams.getMode().shortLabel(), params, primary.getScore(), primary.getScoreError(), primary.getScoreUnit());
+    }
+
+    static List<BenchmarkResult> of(final Iterable<RunResult> runResults) {
+        final List<BenchmarkResult> results = new ArrayList<>();
+        for (final RunResult runResult : runResults) {
+            results.add(of(runResult));
+        }
+        return results;
+    }
+
+    /**
+     * Reads all results of a JMH JSON result file.
+     */
+    static List<BenchmarkResult> read(final Path file) throws IOException {
+        try (final Reader reader = Files.newBufferedReader(file, UTF_8)) {
+            final List<BenchmarkResult> results = new ArrayList<>();
+            for (final JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                final JsonObject result = element.getAsJsonObject();
+                final Map<String, String> params = new TreeMap<>();
+                final JsonObject jsonParams = result.getAsJsonObject("params");
+                if (jsonParams != null) {
+                    jsonParams.entrySet().forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+                }
+                final JsonObject primaryMetric = result.getAsJsonObject("primaryMetric");
+                // JMH writes non-finite numbers as strings (e.g. "NaN"), which Gson parses as well
+                results.add(new BenchmarkResult(
+                        result.get("benchmark").getAsString(),
+                        result.get("mode").getAsString(),
+                        params,
+                        primaryMetric.get("score").getAsDouble(),
+                        primaryMetric.get("scoreError").getAsDouble(),
+                        primaryMetric.get("scoreUnit").getAsString()
+                ));
+            }
+            return results;
+        }
+        catch (final RuntimeException e) {
+            throw new IOException("Invalid JMH result file " + file, e);
+        }
+    }
+
+    String benchmark() {
+        return benchmark;
+    }
+
+    /**
+     * Returns the benchmark name without package, e.g. {@code TunChannelReadBenchmark.read}.
+     */
+    String simpleBenchmark() {
+        final int method = benchmark.lastIndexOf('.');
+        return benchmark.substring(benchmark.lastIndexOf('.', method - 1) + 1);
+    }
+
+    String mode() {
+        return mode;
+    }
+
+    Map<String, String> params() {
+        return params;
+    }
+
+    double score() {
+        return score;
+    }
+
+    double scoreError() {
+        return scoreError;
+    }
+
+    String scoreUnit() {
+        return scoreUnit;
+    }
+
+    /**
+     * Returns {@code true} for throughput results, {@code false} for time (latency) results.
+     */
+    boolean higherIsBetter() {
+        return "thrpt".equals(mode);
+    }
+
+    double lowerBound() {
+        return score - scoreError;
+    }
+
+    double upperBound() {
+        return score + scoreError;
+    }
+
+    /**
+     * Returns the key identifying the benchmark/param combination of this result.
+     */
+    String key() {
+        return benchmark + ' ' + mode + ' ' + params;
+    }
+
+    String paramsString() {
+        final StringBuilder builder = new StringBuilder();
+        params.forEach((key, value) -> builder.append(builder.length() == 0 ? "" : ", ").append(key).append('=').append(value));
+        return builder.toString();
+    }
+
+    String scoreString() {
+        return String.format(Locale.ROOT, "%.3f \u00b1 %.3f %s", score, scoreError, scoreUnit);
+    }
+
+    @Override
+    public String toString() {
+        return simpleBenchmark() + '(' + paramsString() + "): " + scoreString();
+    }
+}
@@ -0,0 +1,75 @@
+package org.drasyl.benchmarks;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pins threads to CPUs via {@code sched_setaffinity(2)}. Only supported on Linux.
+ *
+ * @see CpuTopology
+ */
+public final class CpuAffinity {
+    private CpuAffinity() {
+        // util class
+    }
+
+    /**
+     * Pins the calling thread to {@code cpus}. An empty set allows the thread to run on all CPUs
+     * this process may run on, because threads inherit the affinity of the thread that created
+     * them.
+     *
+     * @throws IOException if the affinity could not be set
+     */
+    public static void pin(final BitSet cpus) throws IOException {
+        if (!"linux".equals(PlatformDependent.normalizedOs())) {
+            if (cpus.isEmpty()) {
+                return;
+            }
+            throw new IOException("Thread affinity is only supported on Linux");
+        }
+
+        final long[] mask = (cpus.isEmpty() ? CpuTopology.current().cpus() : cpus).toLongArray();
+        try {
+            LibC.INSTANCE.sched_setaffinity(0, new NativeLong(mask.length * 8L), mask);
+        }
+        catch (final LastErrorException e) {
+            throw new IOException("sched_setaffinity(" + cpus + ") failed with errno " + e.getErrorCode(), e);
+        }
+    }
+
+    /**
+     * Returns a {@link ThreadFactory} for event loop groups whose threads pin themselves to
+     * {@code cpus} before running.
+     */
+    public static ThreadFactory threadFactory(final String poolName, final BitSet cpus) {
+        return new DefaultThreadFactory(poolName) {
+            @Override
+            protected Thread newThread(final Runnable r, final String name) {
+                return super.newThread(() -> {
+                    try {
+                        pin(cpus);
+                    }
+                    catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    r.run();
+                }, name);
+            }
+        };
+    }
+
+    @SuppressWarnings({"java:S100", "UnusedReturnValue"})
+    interface LibC extends Library {
+        LibC INSTANCE = Native.load("c", LibC.class);
+
+        int sched_setaffinity(int pid, NativeLong cpusetsize, long[] mask) throws LastErrorException;
+    }
+}
@@ -0,0 +1,93 @@
+package org.drasyl.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hands out disjoint sets of CPUs to benchmark runs executed in parallel. CPUs are ordered by
+ * socket, physical core and logical CPU, and each run gets the first window of consecutive free
+ * CPUs in that order. So runs are packed onto as few sockets as possible, and a run shares
+ * physical cores only with itself (as long as its CPU count is a multiple of the hyperthreads per
+ * core).
+ */
+final class CpuScheduler {
+    private static CpuScheduler instance;
+    private final int[] cpus;
+    private final BitSet free = new BitSet();
+
+    CpuScheduler(final CpuTopology topology) {
+        final List<Integer> ordered = new ArrayList<>();
+        topology.cpus().stream().forEach(ordered::add);
+        ordered.sort(Comparator.<Integer>comparingInt(topology::packageId)
+                .thenComparingInt(topology::coreId)
+                .thenComparingInt(cpu -> cpu));
+        cpus = ordered.stream().mapToInt(Integer::intValue).toArray();
+        free.set(0, cpus.length);
+    }
+
+    /**
+     * Returns the scheduler shared by all benchmark classes of this JVM.
+     */
+    static synchronized CpuScheduler instance() throws IOException {
+        if (instance == null) {
+            instance = new CpuScheduler(CpuTopology.current());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the number of CPUs managed by this scheduler.
+     */
+    int size() {
+        return cpus.length;
+    }
+
+    /**
+     * Blocks until {@code count} CPUs (at most all CPUs) are free and reserves them.
+     */
+    synchronized BitSet acquire(final int count) throws InterruptedException {
+        final int n = Math.max(1, Math.min(count, cpus.length));
+        while (true) {
+            for (int start = free.nextSetBit(0); start >= 0 && start + n <= cpus.length; start = free.nextSetBit(start + 1)) {
+                if (free.nextClearBit(start) >= start + n) {
+                    free.clear(start, start + n);
+                    final BitSet acquired = new BitSet();
+                    for (int i = start; i < start + n; i++) {
+                        acquired.set(cpus[i]);
+                    }
+                    return acquired;
+                }
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Releases CPUs previously returned by {@link #acquire(int)}.
+     */
+    synchronized void release(final BitSet acquired) {
+        for (int i = 0; i < cpus.length; i++) {
+            if (acquired.get(cpus[i])) {
+                free.set(i);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns {@code cpus} as list accepted by {@code taskset -c}, e.g. {@code 0,1,4}.
+     */
+    static String toList(final BitSet cpus) {
+        final StringBuilder list = new StringBuilder();
+        cpus.stream().forEach(cpu -> {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(cpu);
+        });
+        return list.toString();
+    }
+}
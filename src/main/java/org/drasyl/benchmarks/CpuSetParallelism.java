@@ -0,0 +1,70 @@
+package org.drasyl.benchmarks;
+
+import org.junit.platform.commons.JUnitException;
+import org.junit.platform.engine.ConfigurationParameters;
+import org.junit.platform.engine.support.hierarchical.ParallelExecutionConfiguration;
+import org.junit.platform.engine.support.hierarchical.ParallelExecutionConfigurationStrategy;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+/**
+ * JUnit parallel execution strategy running at most as many benchmark classes concurrently as
+ * {@link CpuScheduler} can hand out disjoint sets of {@code benchmarkCpus} CPUs (see
+ * {@link AbstractBenchmark#getBenchmarkCpus()}), so classes beyond that wait for a JUnit thread
+ * instead of piling up in {@link CpuScheduler#acquire(int)}. Classes requesting more CPUs than
+ * configured fail, see {@link AbstractBenchmark#getBenchmarkCpus()}.
+ */
+public final class CpuSetParallelism implements ParallelExecutionConfigurationStrategy {
+    @Override
+    public ParallelExecutionConfiguration createConfiguration(final ConfigurationParameters configurationParameters) {
+        final int cpus = configurationParameters.get(AbstractBenchmark.BENCHMARK_CPUS_PROPERTY, Integer::parseInt)
+                .orElse(AbstractBenchmark.DEFAULT_BENCHMARK_CPUS);
+        try {
+            return new Configuration(Math.max(1, CpuScheduler.instance().size() / Math.max(1, cpus)));
+        }
+        catch (final IOException e) {
+            throw new JUnitException("Reading CPU topology failed", e);
+        }
+    }
+
+    private static final class Configuration implements ParallelExecutionConfiguration {
+        private final int parallelism;
+
+        Configuration(final int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        @Override
+        public int getMinimumRunnable() {
+            return parallelism;
+        }
+
+        @Override
+        public int getMaxPoolSize() {
+            return parallelism;
+        }
+
+        @Override
+        public int getCorePoolSize() {
+            return parallelism;
+        }
+
+        @Override
+        public int getKeepAliveSeconds() {
+            return 30;
+        }
+
+        @Override
+        public Predicate<? super ForkJoinPool> getSaturatePredicate() {
+            // do not start compensating threads beyond the pool size
+            return pool -> true;
+        }
+    }
+}
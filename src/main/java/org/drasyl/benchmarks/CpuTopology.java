@@ -0,0 +1,318 @@
+package org.drasyl.benchmarks;
+
+import io.netty.util.internal.SystemPropertyUtil;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.stream.Stream;
+
+/**
+ * CPU topology (logical CPUs, their physical core, socket and NUMA node) of the current machine as
+ * exposed by Linux' sysfs, limited to the CPUs this process may run on.
+ * <p>
+ * Thread placements are resolved relative to an anchor CPU, the first CPU this process may run on,
+ * which the channel's I/O thread is pinned to:
+ * <dl>
+ * <dt>{@code none}</dt><dd>thread is not pinned</dd>
+ * <dt>{@code same-core}</dt><dd>the anchor CPU</dd>
+ * <dt>{@code sibling}</dt><dd>the hyperthread siblings of the anchor CPU</dd>
+ * <dt>{@code same-socket}</dt><dd>all other physical cores of the anchor's socket</dd>
+ * <dt>{@code cross-numa}</dt><dd>all CPUs of other NUMA nodes</dd>
+ * </dl>
+ * Each fork records its resolved placement together with the topology it was resolved against via
+ * {@link #recordPlacement(BenchmarkParams, BitSet, BitSet, BitSet)}, as forks may be restricted to
+ * different CPUs than the JVM starting them.
+ */
+public final class CpuTopology {
+    public static final String NONE = "none";
+    public static final String SAME_CORE = "same-core";
+    public static final String SIBLING = "sibling";
+    public static final String SAME_SOCKET = "same-socket";
+    public static final String CROSS_NUMA = "cross-numa";
+    static final String[] PLACEMENTS = { NONE, SAME_CORE, SIBLING, SAME_SOCKET, CROSS_NUMA };
+    private static final Path CPU_DIR = Paths.get("/sys/devices/system/cpu");
+    private static final Path NODE_DIR = Paths.get("/sys/devices/system/node");
+    private final BitSet cpus;
+    private final int[] coreIds;
+    private final int[] packageIds;
+    private final int[] nodeIds;
+
+    private CpuTopology(final BitSet cpus,
+                        final int[] coreIds,
+                        final int[] packageIds,
+                        final int[] nodeIds) {
+        this.cpus = cpus;
+        this.coreIds = coreIds;
+        this.packageIds = packageIds;
+        this.nodeIds = nodeIds;
+    }
+
+    /**
+     * Returns the topology of the current machine.
+     *
+     * @throws IOException if the topology could not be read (e.g. not running on Linux)
+     */
+    public static CpuTopology current() throws IOException {
+        if (Holder.FAILURE != null) {
+            throw new IOException("Reading CPU topology failed", Holder.FAILURE);
+        }
+        return Holder.CURRENT;
+    }
+
+    /**
+     * Resolves {@code placement} on the current machine. The topology is not read for
+     * {@link #NONE}, so unpinned benchmarks also run on other operating systems.
+     */
+    public static BitSet resolveCurrent(final String placement) throws IOException {
+        if (NONE.equals(placement)) {
+            return new BitSet();
+        }
+        return current().resolve(placement);
+    }
+
+    /**
+     * Returns the CPUs for the I/O thread: the anchor CPU if any of {@code placements} pins a
+     * thread relative to it, an empty set otherwise.
+     */
+    public static BitSet resolveAnchor(final String... placements) throws IOException {
+        final BitSet cpus = new BitSet();
+        for (final String placement : placements) {
+            if (!NONE.equals(placement)) {
+                cpus.set(current().anchor());
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Writes the resolved CPUs of the I/O, writer ({@code null} if there is no writer thread) and
+     * benchmark thread along with {@link #current()} to a new file in the directory given by
+     * system property {@value AbstractBenchmark#PLACEMENT_DIR_PROPERTY}, if set. Empty sets denote
+     * unpinned threads.
+     */
+    public static void recordPlacement(final BenchmarkParams benchmarkParams,
+                                       final BitSet ioCpus,
+                                       final BitSet writerCpus,
+                                       final BitSet benchmarkCpus) throws IOException {
+        final String dir = SystemPropertyUtil.get(AbstractBenchmark.PLACEMENT_DIR_PROPERTY);
+        if (dir == null) {
+            return;
+        }
+
+        final long pid = ProcessHandle.current().pid();
+        final StringBuilder json = new StringBuilder("{\n  \"benchmark\": \"").append(benchmarkParams.id())
+                .append("\",\n  \"pid\": ").append(pid)
+                .append(",\n  \"threads\": {\n    \"io\": ").append(toJson(ioCpus));
+        if (writerCpus != null) {
+            json.append(",\n    \"writer\": ").append(toJson(writerCpus));
+        }
+        json.append(",\n    \"benchmark\": ").append(toJson(benchmarkCpus)).append("\n  },\n  \"topology\": ");
+        if (Holder.FAILURE == null) {
+            json.append(Holder.CURRENT.toJson().trim().replace("\n", "\n  "));
+        }
+        else {
+            json.append("null");
+        }
+        json.append("\n}\n");
+
+        final Path file = Files.createTempFile(Paths.get(dir), "fork-" + pid + "-", ".json");
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toJson(final BitSet cpus) {
+        return cpus.toString().replace('{', '[').replace('}', ']');
+    }
+
+    private static CpuTopology read() throws IOException {
+        final BitSet cpus = parseList(readString(CPU_DIR.resolve("online")));
+        cpus.and(allowedCpus());
+        final int length = cpus.length();
+        final int[] coreIds = new int[length];
+        final int[] packageIds = new int[length];
+        final int[] nodeIds = new int[length];
+        for (int cpu = cpus.nextSetBit(0); cpu >= 0; cpu = cpus.nextSetBit(cpu + 1)) {
+            final Path topology = CPU_DIR.resolve("cpu" + cpu).resolve("topology");
+            coreIds[cpu] = Integer.parseInt(readString(topology.resolve("core_id")));
+            packageIds[cpu] = Integer.parseInt(readString(topology.resolve("physical_package_id")));
+        }
+
+        // kernels without NUMA support have no node directory, all CPUs are on node 0 then
+        if (Files.isDirectory(NODE_DIR)) {
+            try (final Stream<Path> nodes = Files.list(NODE_DIR)) {
+                for (final Path node : (Iterable<Path>) nodes::iterator) {
+                    final String name = node.getFileName().toString();
+                    if (name.matches("node\\d+")) {
+                        final int nodeId = Integer.parseInt(name.substring(4));
+                        final BitSet nodeCpus = parseList(readString(node.resolve("cpulist")));
+                        for (int cpu = nodeCpus.nextSetBit(0); cpu >= 0 && cpu < length; cpu = nodeCpus.nextSetBit(cpu + 1)) {
+                            nodeIds[cpu] = nodeId;
+                        }
+                    }
+                }
+            }
+        }
+
+        return new CpuTopology(cpus, coreIds, packageIds, nodeIds);
+    }
+
+    private static BitSet allowedCpus() throws IOException {
+        for (final String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+            if (line.startsWith("Cpus_allowed_list:")) {
+                return parseList(line.substring(line.indexOf(':') + 1));
+            }
+        }
+        throw new IOException("/proc/self/status does not contain Cpus_allowed_list");
+    }
+
+    /**
+     * Parses a CPU list like {@code 0-3,8,10-11}.
+     */
+    static BitSet parseList(final String list) {
+        final BitSet cpus = new BitSet();
+        for (final String range : list.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int dash = range.indexOf('-');
+            if (dash == -1) {
+                cpus.set(Integer.parseInt(range));
+            }
+            else {
+                cpus.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return cpus;
+    }
+
+    private static String readString(final Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Returns all CPUs this process may run on.
+     */
+    public BitSet cpus() {
+        return (BitSet) cpus.clone();
+    }
+
+    int coreId(final int cpu) {
+        return coreIds[cpu];
+    }
+
+    int packageId(final int cpu) {
+        return packageIds[cpu];
+    }
+
+    /**
+     * Returns the CPU the I/O thread is pinned to if any thread is placed.
+     */
+    public int anchor() {
+        return cpus.nextSetBit(0);
+    }
+
+    /**
+     * Resolves {@code placement} relative to {@link #anchor()}. Returns an empty set for
+     * {@link #NONE}.
+     *
+     * @throws IllegalArgumentException if {@code placement} is unknown or not available on this
+     *                                  machine (e.g. {@link #SIBLING} without SMT)
+     */
+    public BitSet resolve(final String placement) {
+        final int anchor = anchor();
+        final BitSet resolved = new BitSet();
+        if (NONE.equals(placement)) {
+            return resolved;
+        }
+        if (SAME_CORE.equals(placement)) {
+            resolved.set(anchor);
+            return resolved;
+        }
+
+        for (int cpu = cpus.nextSetBit(0); cpu >= 0; cpu = cpus.nextSetBit(cpu + 1)) {
+            final boolean sameCore = packageIds[cpu] == packageIds[anchor] && coreIds[cpu] == coreIds[anchor];
+            switch (placement) {
+                case SIBLING:
+                    resolved.set(cpu, sameCore && cpu != anchor);
+                    break;
+                case SAME_SOCKET:
+                    resolved.set(cpu, packageIds[cpu] == packageIds[anchor] && !sameCore);
+                    break;
+                case CROSS_NUMA:
+                    resolved.set(cpu, nodeIds[cpu] != nodeIds[anchor]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown placement: " + placement);
+            }
+        }
+
+        if (resolved.isEmpty()) {
+            throw new IllegalArgumentException("Placement `" + placement + "` is not available on this machine: " + this);
+        }
+        return resolved;
+    }
+
+    /**
+     * Returns this topology and all available placements as JSON.
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{\n  \"anchor\": ").append(anchor()).append(",\n  \"cpus\": [");
+        for (int cpu = cpus.nextSetBit(0); cpu >= 0; cpu = cpus.nextSetBit(cpu + 1)) {
+            json.append(cpu == anchor() ? "\n" : ",\n")
+                    .append("    { \"cpu\": ").append(cpu)
+                    .append(", \"core\": ").append(coreIds[cpu])
+                    .append(", \"socket\": ").append(packageIds[cpu])
+                    .append(", \"node\": ").append(nodeIds[cpu]).append(" }");
+        }
+        json.append("\n  ],\n  \"placements\": {");
+        for (int i = 0; i < PLACEMENTS.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n").append("    \"").append(PLACEMENTS[i]).append("\": ");
+            try {
+                json.append(toJson(resolve(PLACEMENTS[i])));
+            }
+            catch (final IllegalArgumentException e) {
+                json.append("null");
+            }
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("CpuTopology{");
+        for (int cpu = cpus.nextSetBit(0); cpu >= 0; cpu = cpus.nextSetBit(cpu + 1)) {
+            builder.append(cpu == anchor() ? "" : ", ")
+                    .append("cpu").append(cpu)
+                    .append("=core").append(coreIds[cpu])
+                    .append("/socket").append(packageIds[cpu])
+                    .append("/node").append(nodeIds[cpu]);
+        }
+        return builder.append('}').toString();
+    }
+
+    private static final class Holder {
+        static final CpuTopology CURRENT;
+        static final IOException FAILURE;
+
+        static {
+            CpuTopology topology = null;
+            IOException failure = null;
+            try {
+                topology = read();
+            }
+            catch (final IOException e) {
+                failure = e;
+            }
+            CURRENT = topology;
+            FAILURE = failure;
+        }
+
+        private Holder() {
+            // util class
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.drasyl.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JMH profiler reporting values published by the benchmark itself (e.g. the footprint of a data
+ * structure built during setup) as secondary results. Unlike {@code @AuxCounters}, publishing a
+ * value costs nothing inside the measured loop and values are averaged, not summed, across
+ * iterations.
+ * <p>
+ * Benchmarks call {@link #set(String, double, String)} from a setup or teardown method. A value is
+ * reported at the end of every iteration until it is replaced, so values set during
+ * {@code @TearDown(Level.Iteration)} belong to the iteration that just ended. Added to every
+ * benchmark run via JUnit by {@link AbstractBenchmark}, which also clears all values when a trial
+ * starts.
+ */
+public class GaugeProfiler implements InternalProfiler {
+    private static final Map<String, ScalarResult> GAUGES = new ConcurrentHashMap<>();
+
+    /**
+     * Publishes {@code value} as secondary result {@code label}.
+     */
+    public static void set(final String label, final double value, final String unit) {
+        GAUGES.put(label, new ScalarResult(label, value, unit, AggregationPolicy.AVG));
+    }
+
+    /**
+     * Removes all published values.
+     */
+    public static void clear() {
+        GAUGES.clear();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Values published by the benchmark during setup or teardown";
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams,
+                                final IterationParams iterationParams) {
+        // nothing to do
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams,
+                                                       final IterationParams iterationParams,
+                                                       final IterationResult result) {
+        return new ArrayList<>(GAUGES.values());
+    }
+}
@@ -0,0 +1,146 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pcap4j.packet.IllegalRawDataException;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.UdpPort;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.pcap4j.packet.namednumber.IpVersion.IPV4;
+
+/**
+ * Compares the cost of inspecting the headers (version, addresses, protocol, ports) of a received
+ * IPv4/UDP packet and of verifying its header checksum via {@link Tun4Packet}'s accessors, raw
+ * in-place reads ({@link Ip4Header}) and pcap4j's {@link IpV4Packet#newPacket(byte[], int, int)}.
+ * Packets live in pooled direct buffers, just like packets read from a TUN device. As
+ * {@link Tun4Packet} caches the addresses once read, the accessor benchmarks wrap the buffer in a
+ * new {@link Tun4Packet} per operation, like a channel does per received packet.
+ */
+@SuppressWarnings({"java:S112", "NewClassNamingConvention", "JmhInspections"})
+public class HeaderParseBenchmark extends AbstractBenchmark {
+    private static final String SRC_ADDRESS = "10.10.10.10";
+    private static final String DST_ADDRESS = "10.10.10.11";
+    @Param({ "64", "1468" })
+    private int packetSize;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        try {
+            final byte[] bytes = ipPacket(packetSize);
+            buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        buf.release();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void parseAccessors(final Blackhole blackhole) {
+        // the wrapper does not retain the buffer, so it must not be released either
+        final Tun4Packet packet = new Tun4Packet(buf);
+        blackhole.consume(packet.version());
+        blackhole.consume(packet.sourceAddress());
+        blackhole.consume(packet.destinationAddress());
+        blackhole.consume(packet.protocol());
+        // Tun4Packet has no transport layer accessors
+        final int transportIndex = packet.content().readerIndex() + packet.internetHeaderLength() * 4;
+        blackhole.consume(packet.content().getUnsignedShort(transportIndex));
+        blackhole.consume(packet.content().getUnsignedShort(transportIndex + 2));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void parseRaw(final Blackhole blackhole) {
+        final int index = buf.readerIndex();
+        blackhole.consume(Ip4Header.version(buf, index));
+        blackhole.consume(Ip4Header.sourceAddress(buf, index));
+        blackhole.consume(Ip4Header.destinationAddress(buf, index));
+        blackhole.consume(Ip4Header.protocol(buf, index));
+        blackhole.consume(Ip4Header.sourcePort(buf, index));
+        blackhole.consume(Ip4Header.destinationPort(buf, index));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void parsePcap4j(final Blackhole blackhole) throws IllegalRawDataException {
+        final byte[] bytes = ByteBufUtil.getBytes(buf);
+        final IpV4Packet ipPacket = IpV4Packet.newPacket(bytes, 0, bytes.length);
+        final IpV4Packet.IpV4Header header = ipPacket.getHeader();
+        blackhole.consume(header.getVersion());
+        blackhole.consume(header.getSrcAddr());
+        blackhole.consume(header.getDstAddr());
+        blackhole.consume(header.getProtocol());
+        final UdpPacket.UdpHeader udpHeader = ipPacket.get(UdpPacket.class).getHeader();
+        blackhole.consume(udpHeader.getSrcPort());
+        blackhole.consume(udpHeader.getDstPort());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean checksumAccessors() {
+        return new Tun4Packet(buf).verifyChecksum();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean checksumRaw() {
+        return Ip4Header.verifyChecksum(buf, buf.readerIndex());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean checksumRawUnrolled() {
+        return Ip4Header.verifyChecksumUnrolled(buf, buf.readerIndex());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean checksumPcap4j() throws IllegalRawDataException {
+        final byte[] bytes = ByteBufUtil.getBytes(buf);
+        return IpV4Packet.newPacket(bytes, 0, bytes.length).getHeader().hasValidChecksum(false);
+    }
+
+    static byte[] ipPacket(final int packetSize) throws UnknownHostException {
+        final IpV4Packet.Builder packetBuilder = new IpV4Packet.Builder();
+        packetBuilder.version(IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .identification((short) 100)
+                .ttl((byte) 100)
+                .protocol(IpNumber.UDP)
+                .srcAddr((Inet4Address) InetAddress.getByName(SRC_ADDRESS))
+                .dstAddr((Inet4Address) InetAddress.getByName(DST_ADDRESS))
+                .payloadBuilder(new UdpPacket.Builder()
+                        .srcPort(new UdpPort((short) 12345, "udp"))
+                        .dstPort(new UdpPort((short) 12345, "udp"))
+                        .payloadBuilder(new UnknownPacket.Builder().rawData(new byte[packetSize]))
+                        .correctLengthAtBuild(true)
+                )
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+        return packetBuilder.build().getRawData();
+    }
+}
@@ -0,0 +1,100 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_PROTOCOL;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+
+/**
+ * Reads IPv4 (and TCP/UDP port) header fields in place from the {@link ByteBuf} holding the packet
+ * at {@code index}, without creating any wrapper objects.
+ */
+public final class Ip4Header {
+    private Ip4Header() {
+        // util class
+    }
+
+    public static int version(final ByteBuf buf, final int index) {
+        return buf.getUnsignedByte(index + INET4_VERSION_AND_INTERNET_HEADER_LENGTH) >> 4;
+    }
+
+    /**
+     * Returns the header length in bytes.
+     */
+    public static int headerLength(final ByteBuf buf, final int index) {
+        return (buf.getUnsignedByte(index + INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+    }
+
+    public static int protocol(final ByteBuf buf, final int index) {
+        return buf.getUnsignedByte(index + INET4_PROTOCOL);
+    }
+
+    public static int sourceAddress(final ByteBuf buf, final int index) {
+        return buf.getInt(index + INET4_SOURCE_ADDRESS);
+    }
+
+    public static int destinationAddress(final ByteBuf buf, final int index) {
+        return buf.getInt(index + INET4_DESTINATION_ADDRESS);
+    }
+
+    /**
+     * Returns the source port of the TCP or UDP segment carried by the packet.
+     */
+    public static int sourcePort(final ByteBuf buf, final int index) {
+        return buf.getUnsignedShort(index + headerLength(buf, index));
+    }
+
+    /**
+     * Returns the destination port of the TCP or UDP segment carried by the packet.
+     */
+    public static int destinationPort(final ByteBuf buf, final int index) {
+        return buf.getUnsignedShort(index + headerLength(buf, index) + 2);
+    }
+
+    /**
+     * Verifies the header checksum by summing up the header 16 bits at a time.
+     */
+    public static boolean verifyChecksum(final ByteBuf buf, final int index) {
+        final int headerLength = headerLength(buf, index);
+        int sum = 0;
+        for (int i = 0; i < headerLength; i += 2) {
+            sum += buf.getUnsignedShort(index + i);
+        }
+        return fold(sum) == 0xffff;
+    }
+
+    /**
+     * Verifies the header checksum like {@link #verifyChecksum(ByteBuf, int)}, but sums up 32 bits
+     * at a time and loads option-less headers with three reads. The one's complement sum is
+     * independent of the word size, as the carries are folded back in afterwards.
+     */
+    public static boolean verifyChecksumUnrolled(final ByteBuf buf, final int index) {
+        final int headerLength = headerLength(buf, index);
+        long sum;
+        if (headerLength == INET4_HEADER_LENGTH) {
+            final long a = buf.getLong(index);
+            final long b = buf.getLong(index + 8);
+            sum = (a >>> 32) + (a & 0xffffffffL) + (b >>> 32) + (b & 0xffffffffL) + buf.getUnsignedInt(index + 16);
+        }
+        else {
+            sum = 0;
+            for (int i = 0; i < headerLength; i += 4) {
+                sum += buf.getUnsignedInt(index + i);
+            }
+        }
+        sum = (sum & 0xffffffffL) + (sum >>> 32);
+        sum = (sum & 0xffffffffL) + (sum >>> 32);
+        return fold((int) ((sum & 0xffff) + (sum >>> 16))) == 0xffff;
+    }
+
+    private static int fold(final int sum) {
+        int folded = sum;
+        while ((folded >>> 16) != 0) {
+            folded = (folded & 0xffff) + (folded >>> 16);
+        }
+        return folded;
+    }
+}
@@ -0,0 +1,166 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free {@link RoutingTable} implemented as multibit trie with controlled prefix
+ * expansion. Each node is a run of {@code 2^stride} slots in flat primitive arrays, so a lookup
+ * touches at most {@code addressBits / stride} slots. Addresses are read directly from the given
+ * {@link ByteBuf}.
+ * <p>
+ * Larger strides mean fewer memory accesses per lookup but more memory per node. The default
+ * stride is 8 bits for IPv4 (at most 4 accesses) and 4 bits for IPv6, as sparse IPv6 prefixes
+ * would otherwise waste most of their nodes.
+ */
+public final class LpmTrie implements RoutingTable {
+    private static final int INITIAL_NODES = 16;
+    private final int addressLength;
+    private final int stride;
+    private final int chunkMask;
+    // slot = (node << stride) | next address chunk
+    private int[] children;
+    private int[] values;
+    // prefix length that populated a slot, required to not expand shorter prefixes over longer ones
+    private byte[] lengths;
+    private int nodes = 1;
+    private int defaultValue = NO_ROUTE;
+
+    public LpmTrie(final int addressLength, final int stride) {
+        if (addressLength != 4 && addressLength != 16) {
+            throw new IllegalArgumentException("addressLength must be 4 (IPv4) or 16 (IPv6).");
+        }
+        if (stride != 1 && stride != 2 && stride != 4 && stride != 8) {
+            throw new IllegalArgumentException("stride must be 1, 2, 4, or 8.");
+        }
+        this.addressLength = addressLength;
+        this.stride = stride;
+        this.chunkMask = (1 << stride) - 1;
+        children = new int[INITIAL_NODES << stride];
+        values = new int[INITIAL_NODES << stride];
+        Arrays.fill(values, NO_ROUTE);
+        lengths = new byte[INITIAL_NODES << stride];
+    }
+
+    public LpmTrie(final int addressLength) {
+        this(addressLength, addressLength == 4 ? 8 : 4);
+    }
+
+    @Override
+    public void add(final byte[] prefix, final int prefixLength, final int value) {
+        if (prefix.length != addressLength) {
+            throw new IllegalArgumentException("prefix must be " + addressLength + " bytes long.");
+        }
+        if (prefixLength < 0 || prefixLength > addressLength * 8) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("value must be non-negative.");
+        }
+
+        if (prefixLength == 0) {
+            defaultValue = value;
+            return;
+        }
+
+        // walk (and create) the nodes down to the level the prefix ends in
+        final int level = (prefixLength - 1) / stride;
+        int node = 0;
+        for (int i = 0; i < level; i++) {
+            final int slot = (node << stride) | chunk(prefix, i);
+            if (children[slot] == 0) {
+                // newNode() may grow the arrays, so do not inline it into the assignment
+                final int child = newNode();
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+
+        // expand the remaining bits over all slots covered by the prefix
+        final int bits = prefixLength - level * stride;
+        final int first = chunk(prefix, level) & (chunkMask << (stride - bits)) & chunkMask;
+        final int last = first + (1 << (stride - bits));
+        for (int i = first; i < last; i++) {
+            final int slot = (node << stride) | i;
+            if ((lengths[slot] & 0xff) <= prefixLength) {
+                values[slot] = value;
+                lengths[slot] = (byte) prefixLength;
+            }
+        }
+    }
+
+    @Override
+    public int lookup(final ByteBuf buf, final int index) {
+        if (addressLength == 4) {
+            return lookup(buf.getInt(index));
+        }
+
+        final long high = buf.getLong(index);
+        final long low = buf.getLong(index + 8);
+        int result = defaultValue;
+        int node = 0;
+        for (int bit = 0; bit < 128; bit += stride) {
+            final long bits = bit < 64 ? high : low;
+            final int slot = (node << stride) | (int) ((bits >>> (64 - stride - (bit & 63))) & chunkMask);
+            final int value = values[slot];
+            if (value != NO_ROUTE) {
+                result = value;
+            }
+            node = children[slot];
+            if (node == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the IPv4 address {@code address}.
+     */
+    public int lookup(final int address) {
+        int result = defaultValue;
+        int node = 0;
+        for (int shift = 32 - stride; shift >= 0; shift -= stride) {
+            final int slot = (node << stride) | ((address >>> shift) & chunkMask);
+            final int value = values[slot];
+            if (value != NO_ROUTE) {
+                result = value;
+            }
+            node = children[slot];
+            if (node == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int addressLength() {
+        return addressLength;
+    }
+
+    /**
+     * Returns the number of bytes occupied by the trie's slot arrays.
+     */
+    public long sizeInBytes() {
+        return (long) children.length * Integer.BYTES + (long) values.length * Integer.BYTES + lengths.length;
+    }
+
+    private int chunk(final byte[] prefix, final int level) {
+        final int bit = level * stride;
+        return ((prefix[bit / 8] & 0xff) >>> (8 - stride - bit % 8)) & chunkMask;
+    }
+
+    private int newNode() {
+        if ((nodes + 1) << stride > children.length) {
+            final int oldLength = children.length;
+            final int newLength = oldLength * 2;
+            children = Arrays.copyOf(children, newLength);
+            values = Arrays.copyOf(values, newLength);
+            Arrays.fill(values, oldLength, newLength, NO_ROUTE);
+            lengths = Arrays.copyOf(lengths, newLength);
+        }
+        return nodes++;
+    }
+}
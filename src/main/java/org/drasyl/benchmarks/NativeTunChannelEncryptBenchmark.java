@@ -0,0 +1,107 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollTunChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.kqueue.KQueueTunChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.newTunEventLoopGroup;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+
+/**
+ * Measures the throughput of an AEAD encryption stage placed directly behind
+ * {@link EpollTunChannel}/{@link KQueueTunChannel} reads. Run with the GC profiler enabled (done
+ * automatically when started via JUnit) to get the bytes allocated per packet.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "JmhInspections", "NewClassNamingConvention", "StatementWithEmptyBody"})
+public class NativeTunChannelEncryptBenchmark extends AbstractBenchmark {
+    @Param({ AeadEncryptHandler.CHACHA20_POLY1305, AeadEncryptHandler.AES_GCM })
+    private String algorithm;
+    @Param({ "HEAP", "DIRECT", "REUSE" })
+    private AeadEncryptHandler.Mode mode;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        try {
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            final byte[] key = new byte[AeadEncryptHandler.KEY_LENGTH];
+            new SecureRandom().nextBytes(key);
+            group = newTunEventLoopGroup(null);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    ch.pipeline().addLast(new AeadEncryptHandler(algorithm, mode, key));
+                    ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                            // ciphertexts of IPv4 packets, anything else was passed on untouched
+                            if (msg instanceof ByteBuf) {
+                                receivedPackets.incrementAndGet();
+                            }
+                            ReferenceCountUtil.release(msg);
+                        }
+                    });
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Override
+    protected boolean profileGc() {
+        return true;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void encrypt() {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        receivedPackets.getAndDecrement();
+    }
+}
@@ -0,0 +1,108 @@
+package org.drasyl.benchmarks;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollTunChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.kqueue.KQueueTunChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.drasyl.benchmarks.TunChannelOffloadBenchmark.LatencyRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.newTunEventLoopGroup;
+import static org.drasyl.benchmarks.TunChannelOffloadBenchmark.initPipeline;
+import static org.drasyl.benchmarks.TunChannelOffloadBenchmark.newWorkerGroup;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+
+/**
+ * Measures the cost of handing packets read by {@link EpollTunChannel}/{@link KQueueTunChannel}
+ * over to an {@link EventExecutorGroup} worker pool. See {@link TunChannelOffloadBenchmark} for
+ * the {@code offload} modes and the reported latency.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "JmhInspections", "NewClassNamingConvention", "StatementWithEmptyBody"})
+public class NativeTunChannelOffloadBenchmark extends AbstractBenchmark {
+    @Param({ "none", "default", "unordered", "batch" })
+    private String offload;
+    @Param({ "1", "4", "16" })
+    private int depth;
+    @Param({ "2" })
+    private int workerThreads;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private EventExecutorGroup workerGroup;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+    @Setup
+    public void setup() {
+        try {
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            workerGroup = newWorkerGroup(offload, workerThreads);
+            group = newTunEventLoopGroup(null);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    initPipeline(ch.pipeline(), offload, depth, workerGroup, latencyRecorder, receivedPackets);
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        latencyRecorder.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardownIteration() {
+        GaugeProfiler.set("latencyNanos", latencyRecorder.meanNanos(), "ns");
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+            if (workerGroup != null) {
+                workerGroup.shutdownGracefully().await();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void offload() {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        receivedPackets.getAndDecrement();
+    }
+}
@@ -2,8 +2,8 @@ package org.drasyl.benchmarks;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
@@ -12,101 +12,92 @@ import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollTunChannel;
 import io.netty.channel.group.ChannelGroup;
-import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.kqueue.KQueue;
 import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.kqueue.KQueueTunChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.Tun4Packet;
 import io.netty.channel.socket.TunAddress;
-import io.netty.channel.socket.TunChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.internal.PlatformDependent;
-import org.drasyl.benchmarks.TunChannelReadBenchmark.WriteHandler;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+
 @SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "JmhInspections", "NewClassNamingConvention", "StatementWithEmptyBody"})
 public class NativeTunChannelReadBenchmark extends AbstractBenchmark {
     private static final String SRC_ADDRESS = "10.10.10.10";
-    private static final String DST_ADDRESS = "10.10.10.11";
-    private static final int PORT = 12345;
     @Param({ "1" })
     private int writeThreads;
     @Param({ "1468" })
     private int packetSize;
+    // none: release packets untouched, raw: read headers in place, accessors: use packet accessors;
+    // the parsing variants are opt-in (-p headerParsing=raw,accessors or jmhParams) to keep baselines comparable
+    @Param({ "none" })
+    private String headerParsing;
+    // placement of the writer threads and the benchmark thread relative to the I/O thread, see CpuTopology
+    @Param({ "none" })
+    private String writerPlacement;
+    @Param({ "none" })
+    private String benchmarkPlacement;
     private EventLoopGroup writeGroup;
     private EventLoopGroup group;
     private ChannelGroup writeChannels;
     private Channel channel;
     private final AtomicLong receivedPackets = new AtomicLong();
+    private boolean parseRaw;
+    private boolean parseAccessors;
+    // sink for parsed header fields, only accessed by the event loop until it is shut down
+    private long headerDigest;
+    private BitSet benchmarkCpus;
 
     @Setup
-    public void setup() {
+    public void setup(final BenchmarkParams benchmarkParams) {
         try {
-            writeGroup = new NioEventLoopGroup(writeThreads);
-            final Class<? extends TunChannel> channelClass;
-            if (KQueue.isAvailable()) {
-                group = new KQueueEventLoopGroup(1);
-                channelClass = KQueueTunChannel.class;
-            } else if (Epoll.isAvailable()) {
-                group = new EpollEventLoopGroup(1);
-                channelClass = EpollTunChannel.class;
-            } else {
-                throw new RuntimeException("Unsupported platform: Neither kqueue nor epoll are available");
-            }
-
-            channel = new Bootstrap()
-                    .group(group)
-                    .channel(channelClass)
-                    .handler(new ChannelInboundHandlerAdapter() {
-                        @Override
-                        public void channelRead(final ChannelHandlerContext ctx, final Object msg1) {
-                            if (msg1 instanceof Tun4Packet) {
-                                ((Tun4Packet) msg1).release();
-                                receivedPackets.incrementAndGet();
-                            }
-                        }
-                    })
-                    .bind(new TunAddress())
-                    .sync()
-                    .channel();
-            final String name = ((TunAddress) channel.localAddress()).ifName();
-
-            if (PlatformDependent.isOsx()) {
-                exec("/sbin/ifconfig", name, "add", SRC_ADDRESS, SRC_ADDRESS);
-                exec("/sbin/ifconfig", name, "up");
-                exec("/sbin/route", "add", "-net", SRC_ADDRESS + '/' + 31, "-iface", name);
-            }
-            else {
-                // Linux
-                exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
-                exec("/sbin/ip", "link", "set", "dev", name, "up");
-            }
-
-            final ByteBuf msg = Unpooled.wrappedBuffer(new byte[packetSize]);
+            parseRaw = "raw".equals(headerParsing);
+            parseAccessors = "accessors".equals(headerParsing);
+            final BitSet ioCpus = CpuTopology.resolveAnchor(writerPlacement, benchmarkPlacement);
+            final BitSet writerCpus = CpuTopology.resolveCurrent(writerPlacement);
+            benchmarkCpus = CpuTopology.resolveCurrent(benchmarkPlacement);
+            CpuTopology.recordPlacement(benchmarkParams, ioCpus, writerCpus, benchmarkCpus);
+            writeGroup = new NioEventLoopGroup(writeThreads, CpuAffinity.threadFactory("writer", writerCpus));
+            group = newTunEventLoopGroup(CpuAffinity.threadFactory("io", ioCpus));
 
-            final Bootstrap writeBootstrap = new Bootstrap()
-                    .group(writeGroup)
-                    .channel(NioDatagramChannel.class)
-                    .handler(new ChannelInitializer<>() {
-                        @Override
-                        protected void initChannel(final Channel ch) {
-                            ch.pipeline().addLast(new WriteHandler<>(msg));
-                        }
-                    });
+            channel = bindTunChannel(group, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                    if (msg instanceof Tun4Packet) {
+                        parseHeaders((Tun4Packet) msg);
+                        ((Tun4Packet) msg).release();
+                        receivedPackets.incrementAndGet();
+                    }
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
 
-            writeChannels = new DefaultChannelGroup(writeGroup.next());
-            for (int i = 0; i < writeThreads; i++) {
-                msg.retain();
-                writeChannels.add(writeBootstrap.connect(DST_ADDRESS, PORT).sync().channel());
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        try {
+            if (!benchmarkCpus.isEmpty()) {
+                CpuAffinity.pin(benchmarkCpus);
             }
         }
         catch (final Exception e) {
@@ -115,13 +106,14 @@ public class NativeTunChannelReadBenchmark extends AbstractBenchmark {
     }
 
     @TearDown
-    public void teardown() {
+    public void teardown(final Blackhole blackhole) {
         try {
-            writeChannels.forEach(ch -> ch.pipeline().get(WriteHandler.class).stopWriting());
-            writeChannels.close().await();
+            stopWriters(writeChannels);
             channel.close().await();
             writeGroup.shutdownGracefully().await();
             group.shutdownGracefully().await();
+            // the event loop has terminated, so its writes are visible here
+            blackhole.consume(headerDigest);
         }
         catch (final Exception e) {
             handleUnexpectedException(e);
@@ -137,6 +129,73 @@ public class NativeTunChannelReadBenchmark extends AbstractBenchmark {
         receivedPackets.getAndDecrement();
     }
 
+    private void parseHeaders(final Tun4Packet packet) {
+        final ByteBuf content = packet.content();
+        final int index = content.readerIndex();
+        if (parseRaw) {
+            headerDigest += Ip4Header.version(content, index)
+                    ^ Ip4Header.sourceAddress(content, index)
+                    ^ Ip4Header.destinationAddress(content, index)
+                    ^ Ip4Header.protocol(content, index)
+                    ^ Ip4Header.sourcePort(content, index)
+                    ^ Ip4Header.destinationPort(content, index);
+        }
+        else if (parseAccessors) {
+            // only the accessors common to all TunPackets, protocol and ports are read in place
+            headerDigest += packet.version()
+                    ^ packet.sourceAddress().hashCode()
+                    ^ packet.destinationAddress().hashCode()
+                    ^ Ip4Header.protocol(content, index)
+                    ^ Ip4Header.sourcePort(content, index)
+                    ^ Ip4Header.destinationPort(content, index);
+        }
+    }
+
+    /**
+     * Returns a single-threaded kqueue or epoll event loop group for {@link #bindTunChannel}, using
+     * {@code threadFactory} (or the default one if {@code null}).
+     */
+    static EventLoopGroup newTunEventLoopGroup(final ThreadFactory threadFactory) {
+        if (KQueue.isAvailable()) {
+            return new KQueueEventLoopGroup(1, threadFactory);
+        }
+        else if (Epoll.isAvailable()) {
+            return new EpollEventLoopGroup(1, threadFactory);
+        }
+        else {
+            throw new RuntimeException("Unsupported platform: Neither kqueue nor epoll are available");
+        }
+    }
+
+    /**
+     * Binds a {@link KQueueTunChannel}/{@link EpollTunChannel} with {@code handler} (e.g. a
+     * {@link ChannelInitializer}) to {@code group}, assigns {@code 10.10.10.10/31} to it and
+     * brings it up.
+     */
+    static Channel bindTunChannel(final EventLoopGroup group,
+                                  final ChannelHandler handler) throws InterruptedException, IOException {
+        final Channel channel = new Bootstrap()
+                .group(group)
+                .channel(group instanceof KQueueEventLoopGroup ? KQueueTunChannel.class : EpollTunChannel.class)
+                .handler(handler)
+                .bind(new TunAddress())
+                .sync()
+                .channel();
+        final String name = ((TunAddress) channel.localAddress()).ifName();
+
+        if (PlatformDependent.isOsx()) {
+            exec("/sbin/ifconfig", name, "add", SRC_ADDRESS, SRC_ADDRESS);
+            exec("/sbin/ifconfig", name, "up");
+            exec("/sbin/route", "add", "-net", SRC_ADDRESS + '/' + 31, "-iface", name);
+        }
+        else {
+            // Linux
+            exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
+            exec("/sbin/ip", "link", "set", "dev", name, "up");
+        }
+        return channel;
+    }
+
     static void exec(final String... command) throws IOException {
         try {
             final int exitCode = Runtime.getRuntime().exec(command).waitFor();
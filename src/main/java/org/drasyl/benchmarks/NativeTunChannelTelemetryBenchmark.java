@@ -0,0 +1,92 @@
+package org.drasyl.benchmarks;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollTunChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.kqueue.KQueueTunChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.newTunEventLoopGroup;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+import static org.drasyl.benchmarks.TunChannelTelemetryBenchmark.initPipeline;
+import static org.drasyl.benchmarks.TunChannelTelemetryBenchmark.startRecording;
+
+/**
+ * Measures the overhead of {@link TunTelemetryHandler} on
+ * {@link EpollTunChannel}/{@link KQueueTunChannel}. See {@link TunChannelTelemetryBenchmark} for
+ * the {@code telemetry} modes.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "JmhInspections", "NewClassNamingConvention", "StatementWithEmptyBody"})
+public class NativeTunChannelTelemetryBenchmark extends AbstractBenchmark {
+    @Param({ "off", "disabled", "recording" })
+    private String telemetry;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private Recording recording;
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        try {
+            recording = startRecording(telemetry);
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            group = newTunEventLoopGroup(null);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    initPipeline(ch.pipeline(), telemetry, receivedPackets);
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+            if (recording != null) {
+                recording.close();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void telemetry(final Blackhole blackhole) {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        blackhole.consume(receivedPackets.getAndDecrement());
+    }
+}
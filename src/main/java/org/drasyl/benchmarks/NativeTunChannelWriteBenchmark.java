@@ -19,10 +19,12 @@ import io.netty.util.internal.PlatformDependent;
 import org.drasyl.benchmarks.TunChannelWriteBenchmark.WriteHandler;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
 import org.openjdk.jmh.infra.Blackhole;
 import org.pcap4j.packet.IpV4Packet;
 import org.pcap4j.packet.IpV4Rfc791Tos;
@@ -33,6 +35,8 @@ import org.pcap4j.packet.namednumber.UdpPort;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.util.BitSet;
+import java.util.concurrent.ThreadFactory;
 
 import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.exec;
 import static org.pcap4j.packet.namednumber.IpVersion.IPV4;
@@ -43,20 +47,28 @@ public class NativeTunChannelWriteBenchmark extends AbstractBenchmark {
     private static final String DST_ADDRESS = "10.10.10.11";
     @Param({ "1468" })
     private int packetSize;
+    // placement of the benchmark thread relative to the I/O thread, which also writes, see CpuTopology
+    @Param({ "none" })
+    private String benchmarkPlacement;
     private EventLoopGroup group;
     private Channel channel;
     private WriteHandler<TunPacket> writeHandler;
+    private BitSet benchmarkCpus;
 
     @Setup
-    public void setup() {
+    public void setup(final BenchmarkParams benchmarkParams) {
         try {
+            final BitSet ioCpus = CpuTopology.resolveAnchor(benchmarkPlacement);
+            benchmarkCpus = CpuTopology.resolveCurrent(benchmarkPlacement);
+            CpuTopology.recordPlacement(benchmarkParams, ioCpus, null, benchmarkCpus);
+            final ThreadFactory ioThreadFactory = CpuAffinity.threadFactory("io", ioCpus);
             final Class<? extends TunChannel> channelClass;
             if (KQueue.isAvailable()) {
-                group = new KQueueEventLoopGroup(1);
+                group = new KQueueEventLoopGroup(1, ioThreadFactory);
                 channelClass = KQueueTunChannel.class;
             }
             else if (Epoll.isAvailable()) {
-                group = new EpollEventLoopGroup(1);
+                group = new EpollEventLoopGroup(1, ioThreadFactory);
                 channelClass = EpollTunChannel.class;
             }
             else {
@@ -109,6 +121,18 @@ public class NativeTunChannelWriteBenchmark extends AbstractBenchmark {
         }
     }
 
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        try {
+            if (!benchmarkCpus.isEmpty()) {
+                CpuAffinity.pin(benchmarkCpus);
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
     @TearDown
     public void teardown() {
         try {
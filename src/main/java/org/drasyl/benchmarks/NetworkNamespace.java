@@ -0,0 +1,51 @@
+package org.drasyl.benchmarks;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+
+/**
+ * Moves threads into new network namespaces via {@code unshare(2)}. Only supported on Linux and
+ * requires {@code CAP_SYS_ADMIN}.
+ * <p>
+ * The network namespace is a per-thread attribute: devices and sockets created by the calling
+ * thread afterwards, threads it starts and processes it executes (like {@code ip}) belong to the
+ * new namespace, while the rest of the process (e.g. JMH's connection to its host) stays in the
+ * old one. So TUN devices, addresses and routes of benchmarks running in different namespaces do
+ * not collide.
+ */
+public final class NetworkNamespace {
+    private static final int CLONE_NEWNET = 0x40000000;
+
+    private NetworkNamespace() {
+        // util class
+    }
+
+    /**
+     * Moves the calling thread into a new, empty network namespace.
+     *
+     * @throws IOException if the namespace could not be created
+     */
+    public static void enter() throws IOException {
+        if (!"linux".equals(PlatformDependent.normalizedOs())) {
+            throw new IOException("Network namespaces are only supported on Linux");
+        }
+
+        try {
+            LibC.INSTANCE.unshare(CLONE_NEWNET);
+        }
+        catch (final LastErrorException e) {
+            throw new IOException("unshare(CLONE_NEWNET) failed with errno " + e.getErrorCode(), e);
+        }
+    }
+
+    @SuppressWarnings({"java:S100", "UnusedReturnValue"})
+    interface LibC extends Library {
+        LibC INSTANCE = Native.load("c", LibC.class);
+
+        int unshare(int flags) throws LastErrorException;
+    }
+}
@@ -0,0 +1,193 @@
+package org.drasyl.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.format.OutputFormat;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runs the benchmark/param combinations included by the given options in parallel, each on its own
+ * set of CPUs handed out by {@link CpuScheduler}. The forks of a run are started through a wrapper
+ * script executing {@code taskset}, so they (and {@link CpuTopology}/{@link CpuAffinity} within
+ * them) only see the CPUs of their run. Forks are expected to move into their own network namespace
+ * (see {@link NetworkNamespace}), so their TUN devices, addresses and routes do not collide.
+ * <p>
+ * The JMH output of each run is written to a log file. JMH's lock preventing concurrent runs is
+ * disabled only for JVMs started for parallel runs: the forks, and the JVMs running JMH's runner
+ * for each combination (see {@link #runInOwnJvm(Options)}), so other JMH runs of this JVM still
+ * take it.
+ */
+final class ParallelRunner {
+    private static final String IGNORE_LOCK_PROPERTY = "jmh.ignoreLock";
+
+    private ParallelRunner() {
+        // util class
+    }
+
+    /**
+     * Runs all benchmark/param combinations included by {@code options} with {@code runner}, using
+     * {@code cpus} CPUs each, and returns their results in benchmark/param order.
+     *
+     * @param logDir directory the JMH output of each run is written to
+     */
+    static List<RunResult> run(final Options options,
+                               final int cpus,
+                               final Path logDir,
+                               final SingleRunner runner) throws IOException, InterruptedException, ExecutionException {
+        final CpuScheduler scheduler = CpuScheduler.instance();
+        final String java = options.getJvm().orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        final OutputFormat silent = OutputFormatFactory.createFormatInstance(new PrintStream(OutputStream.nullOutputStream()), VerboseMode.SILENT);
+        Files.createDirectories(logDir);
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final List<Future<Collection<RunResult>>> futures = new ArrayList<>();
+            final Set<BenchmarkListEntry> entries = BenchmarkList.defaultList().find(silent, options.getIncludes(), options.getExcludes());
+            for (final BenchmarkListEntry entry : entries) {
+                for (final Map<String, String> params : AdaptiveRunner.paramCombinations(entry, options)) {
+                    final Path log = logDir.resolve(entry.getUsername().substring(entry.getUsername().lastIndexOf('.') + 1) + '-' + futures.size() + ".log");
+                    final ChainedOptionsBuilder builder = AdaptiveRunner.only(options, entry, entries)
+                            .jvmArgsAppend(jvmArgsAppend(options))
+                            .output(log.toString());
+                    params.forEach(builder::param);
+
+                    futures.add(executor.submit(() -> {
+                        final BitSet acquired = scheduler.acquire(cpus);
+                        try {
+                            final Path wrapper = wrapper(java, acquired);
+                            try {
+                                return runner.run(builder.jvm(wrapper.toString()).build());
+                            }
+                            finally {
+                                Files.deleteIfExists(wrapper);
+                            }
+                        }
+                        finally {
+                            scheduler.release(acquired);
+                        }
+                    }));
+                }
+            }
+
+            final List<RunResult> runResults = new ArrayList<>();
+            for (final Future<Collection<RunResult>> future : futures) {
+                runResults.addAll(future.get());
+            }
+            return runResults;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs JMH's runner for {@code options} in a JVM of its own with JMH's lock disabled, so
+     * concurrent runs neither wait for each other nor require disabling the lock for this JVM.
+     */
+    static Collection<RunResult> runInOwnJvm(final Options options) throws IOException, InterruptedException {
+        final Path dir = Files.createTempDirectory("parallel");
+        final Path optionsFile = dir.resolve("options.bin");
+        final Path resultFile = dir.resolve("results.bin");
+        try (final ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(optionsFile))) {
+            out.writeObject(options);
+        }
+
+        final int exitCode = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-D" + IGNORE_LOCK_PROPERTY + "=true",
+                "-cp", System.getProperty("java.class.path"),
+                ParallelRunner.class.getName(), optionsFile.toString(), resultFile.toString()
+        ).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+            throw new IOException("JMH runner failed with exit code " + exitCode);
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(Files.newInputStream(resultFile))) {
+            @SuppressWarnings("unchecked") final Collection<RunResult> runResults = (Collection<RunResult>) in.readObject();
+            return runResults;
+        }
+        catch (final ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Entry point of the JVMs started by {@link #runInOwnJvm(Options)}:
+     * {@code <optionsFile> <resultFile>}.
+     */
+    public static void main(final String[] args) throws IOException, ClassNotFoundException, RunnerException {
+        final Options options;
+        try (final ObjectInputStream in = new ObjectInputStream(Files.newInputStream(Paths.get(args[0])))) {
+            options = (Options) in.readObject();
+        }
+
+        final Collection<RunResult> runResults = new ArrayList<>(new Runner(options).run());
+
+        try (final ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(Paths.get(args[1])))) {
+            out.writeObject(runResults);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Returns the JVM args appended to the forks, as JMH does not merge them with the parent's.
+     * The lock is also taken by the in-process runs of {@link AdaptiveRunner}.
+     */
+    private static String[] jvmArgsAppend(final Options options) {
+        final List<String> args = new ArrayList<>(options.getJvmArgsAppend().orElse(new ArrayList<>()));
+        args.add("-D" + IGNORE_LOCK_PROPERTY + "=true");
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Creates a script starting {@code java} bound to {@code cpus}.
+     */
+    private static Path wrapper(final String java, final BitSet cpus) throws IOException {
+        final Path wrapper = Files.createTempFile("taskset-java", ".sh", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Files.write(wrapper, ("#!/bin/sh\nexec taskset -c " + CpuScheduler.toList(cpus) + ' ' + shellQuote(java) + " \"$@\"\n").getBytes(UTF_8));
+        return wrapper;
+    }
+
+    /**
+     * Returns {@code s} as single-quoted shell word, with embedded single quotes escaped.
+     */
+    private static String shellQuote(final String s) {
+        return '\'' + s.replace("'", "'\\''") + '\'';
+    }
+
+    /**
+     * Executes a single benchmark/param combination, e.g. with JMH's runner or
+     * {@link AdaptiveRunner}.
+     */
+    @FunctionalInterface
+    interface SingleRunner {
+        Collection<RunResult> run(Options options) throws Exception;
+    }
+}
@@ -0,0 +1,195 @@
+package org.drasyl.benchmarks;
+
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.profile.ProfilerException;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * JMH profiler reporting the kernel-side cost per operation (i.e. per packet for the read and
+ * write benchmarks) on Linux:
+ * <ul>
+ * <li>{@code proc.cpu.user}/{@code proc.cpu.sys}: process CPU time from {@code /proc/self/stat}</li>
+ * <li>{@code proc.ctxsw.voluntary}/{@code proc.ctxsw.involuntary}: context switches of all threads
+ * from {@code /proc/self/task/*}{@code /status} ({@code /proc/self/status} only covers the main
+ * thread)</li>
+ * <li>{@code proc.syscr}/{@code proc.syscw}: read/write syscalls from {@code /proc/self/io}</li>
+ * <li>{@code eventloop.cpu.user}/{@code eventloop.cpu.sys}: CPU time of the channels' I/O threads,
+ * i.e. threads whose name matches {@code threads} (default {@value #DEFAULT_THREADS})</li>
+ * </ul>
+ * Usage: {@code -prof org.drasyl.benchmarks.ProcProfiler[:threads=<regex>]} or
+ * {@code -DprocProfiler=true} for benchmarks run via JUnit.
+ */
+public class ProcProfiler implements InternalProfiler {
+    static final String DEFAULT_THREADS = "(io|defaultEventLoopGroup|epollEventLoopGroup|kQueueEventLoopGroup)-\\d+-\\d+|tun-(reader|writer)";
+    // USER_HZ, the unit of the CPU times in /proc, is 100 on all Linux platforms
+    private static final long NANOS_PER_TICK = 10_000_000L;
+    private static final Path SELF = Paths.get("/proc/self");
+    private final Pattern threads;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private Snapshot before;
+
+    public ProcProfiler(final String initLine) throws ProfilerException {
+        if (!"linux".equals(PlatformDependent.normalizedOs())) {
+            throw new ProfilerException("ProcProfiler requires Linux' /proc file system");
+        }
+        if (!threadMXBean.isThreadCpuTimeSupported()) {
+            throw new ProfilerException("ProcProfiler requires thread CPU time measurement");
+        }
+
+        String threadsRegex = DEFAULT_THREADS;
+        if (initLine != null && !initLine.isEmpty()) {
+            if (!initLine.startsWith("threads=")) {
+                throw new ProfilerException("Unknown option: " + initLine + " (supported: threads=<regex>)");
+            }
+            threadsRegex = initLine.substring("threads=".length());
+        }
+        threads = Pattern.compile(threadsRegex);
+    }
+
+    @Override
+    public String getDescription() {
+        return "CPU time, context switches and syscalls per operation from /proc";
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams,
+                                final IterationParams iterationParams) {
+        before = snapshot();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams,
+                                                       final IterationParams iterationParams,
+                                                       final IterationResult result) {
+        final Snapshot after = snapshot();
+        final double ops = result.getMetadata().getAllOps();
+        final List<Result> results = new ArrayList<>();
+        if (ops == 0) {
+            return results;
+        }
+
+        results.add(new ScalarResult("proc.cpu.user", (after.userTicks - before.userTicks) * NANOS_PER_TICK / ops, "ns/op", AggregationPolicy.AVG));
+        results.add(new ScalarResult("proc.cpu.sys", (after.sysTicks - before.sysTicks) * NANOS_PER_TICK / ops, "ns/op", AggregationPolicy.AVG));
+        results.add(new ScalarResult("proc.ctxsw.voluntary", (after.voluntarySwitches - before.voluntarySwitches) / ops, "#/op", AggregationPolicy.AVG));
+        results.add(new ScalarResult("proc.ctxsw.involuntary", (after.involuntarySwitches - before.involuntarySwitches) / ops, "#/op", AggregationPolicy.AVG));
+        if (after.syscr >= 0 && before.syscr >= 0) {
+            results.add(new ScalarResult("proc.syscr", (after.syscr - before.syscr) / ops, "#/op", AggregationPolicy.AVG));
+            results.add(new ScalarResult("proc.syscw", (after.syscw - before.syscw) / ops, "#/op", AggregationPolicy.AVG));
+        }
+
+        long eventLoopUser = 0;
+        long eventLoopCpu = 0;
+        for (final Map.Entry<Long, long[]> entry : after.threadTimes.entrySet()) {
+            final long[] beforeTimes = before.threadTimes.getOrDefault(entry.getKey(), new long[2]);
+            eventLoopUser += entry.getValue()[0] - beforeTimes[0];
+            eventLoopCpu += entry.getValue()[1] - beforeTimes[1];
+        }
+        results.add(new ScalarResult("eventloop.cpu.user", eventLoopUser / ops, "ns/op", AggregationPolicy.AVG));
+        results.add(new ScalarResult("eventloop.cpu.sys", (eventLoopCpu - eventLoopUser) / ops, "ns/op", AggregationPolicy.AVG));
+
+        return results;
+    }
+
+    private Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot();
+        try {
+            // /proc/self/stat: pid (comm) state ppid ... utime stime, comm may contain spaces
+            final String stat = readString(SELF.resolve("stat"));
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            snapshot.userTicks = Long.parseLong(fields[11]);
+            snapshot.sysTicks = Long.parseLong(fields[12]);
+
+            try (final Stream<Path> tasks = Files.list(SELF.resolve("task"))) {
+                for (final Path task : (Iterable<Path>) tasks::iterator) {
+                    try {
+                        for (final String line : Files.readAllLines(task.resolve("status"), US_ASCII)) {
+                            if (line.startsWith("voluntary_ctxt_switches:")) {
+                                snapshot.voluntarySwitches += parseValue(line);
+                            }
+                            else if (line.startsWith("nonvoluntary_ctxt_switches:")) {
+                                snapshot.involuntarySwitches += parseValue(line);
+                            }
+                        }
+                    }
+                    catch (final NoSuchFileException e) {
+                        // thread has terminated in the meantime
+                    }
+                }
+            }
+
+            snapshot.syscr = -1;
+            snapshot.syscw = -1;
+            try {
+                for (final String line : Files.readAllLines(SELF.resolve("io"), US_ASCII)) {
+                    if (line.startsWith("syscr:")) {
+                        snapshot.syscr = parseValue(line);
+                    }
+                    else if (line.startsWith("syscw:")) {
+                        snapshot.syscw = parseValue(line);
+                    }
+                }
+            }
+            catch (final IOException e) {
+                // /proc/self/io is not available in every container
+            }
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (final ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+            if (info != null && threads.matcher(info.getThreadName()).matches()) {
+                final long id = info.getThreadId();
+                snapshot.threadTimes.put(id, new long[]{
+                        threadMXBean.getThreadUserTime(id),
+                        threadMXBean.getThreadCpuTime(id)
+                });
+            }
+        }
+
+        return snapshot;
+    }
+
+    private static long parseValue(final String line) {
+        return Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+    }
+
+    private static String readString(final Path path) throws IOException {
+        return new String(Files.readAllBytes(path), US_ASCII).trim();
+    }
+
+    private static class Snapshot {
+        long userTicks;
+        long sysTicks;
+        long voluntarySwitches;
+        long involuntarySwitches;
+        long syscr;
+        long syscw;
+        // thread id -> [user time, cpu time]
+        final Map<Long, long[]> threadTimes = new HashMap<>();
+    }
+}
@@ -0,0 +1,135 @@
+package org.drasyl.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares benchmark results against a baseline. A result only counts as
+ * {@link Status#REGRESSION} (or {@link Status#IMPROVEMENT}) if its score error interval does not
+ * overlap the baseline's and the score changed by more than {@code threshold} (relative). For
+ * throughput higher scores are better, for all time based modes lower scores are.
+ */
+final class RegressionGate {
+    private RegressionGate() {
+        // util class
+    }
+
+    enum Status {
+        REGRESSION,
+        IMPROVEMENT,
+        UNCHANGED,
+        NEW,
+        MISSING
+    }
+
+    /**
+     * Compares all results of {@code current} with the result of the same benchmark/param
+     * combination in {@code baseline}.
+     */
+    static List<Comparison> compare(final List<BenchmarkResult> baseline,
+                                    final List<BenchmarkResult> current,
+                                    final double threshold) {
+        final Map<String, BenchmarkResult> baselineByKey = new LinkedHashMap<>();
+        for (final BenchmarkResult result : baseline) {
+            baselineByKey.put(result.key(), result);
+        }
+
+        final List<Comparison> comparisons = new ArrayList<>();
+        for (final BenchmarkResult result : current) {
+            comparisons.add(new Comparison(baselineByKey.remove(result.key()), result, threshold));
+        }
+        for (final BenchmarkResult result : baselineByKey.values()) {
+            comparisons.add(new Comparison(result, null, threshold));
+        }
+        return comparisons;
+    }
+
+    static boolean hasRegression(final List<Comparison> comparisons) {
+        for (final Comparison comparison : comparisons) {
+            if (comparison.status() == Status.REGRESSION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code comparisons} as markdown table.
+     */
+    static String toMarkdown(final List<Comparison> comparisons) {
+        final StringBuilder markdown = new StringBuilder()
+                .append("| Benchmark | Params | Mode | Baseline | Current | Change | Status |\n")
+                .append("|---|---|---|---:|---:|---:|---|\n");
+        for (final Comparison comparison : comparisons) {
+            final BenchmarkResult any = comparison.current() != null ? comparison.current() : comparison.baseline();
+            markdown.append("| ").append(any.simpleBenchmark())
+                    .append(" | ").append(any.paramsString())
+                    .append(" | ").append(any.mode())
+                    .append(" | ").append(comparison.baseline() != null ? comparison.baseline().scoreString() : "")
+                    .append(" | ").append(comparison.current() != null ? comparison.current().scoreString() : "")
+                    .append(" | ").append(Double.isNaN(comparison.change()) ? "" : String.format("%+.1f%%", comparison.change() * 100))
+                    .append(" | ").append(comparison.status() == Status.REGRESSION ? "**REGRESSION**" : comparison.status().name().toLowerCase())
+                    .append(" |\n");
+        }
+        return markdown.toString();
+    }
+
+    static final class Comparison {
+        private final BenchmarkResult baseline;
+        private final BenchmarkResult current;
+        private final double change;
+        private final Status status;
+
+        Comparison(final BenchmarkResult baseline,
+                   final BenchmarkResult current,
+                   final double threshold) {
+            this.baseline = baseline;
+            this.current = current;
+            if (baseline == null) {
+                change = Double.NaN;
+                status = Status.NEW;
+            }
+            else if (current == null) {
+                change = Double.NaN;
+                status = Status.MISSING;
+            }
+            else {
+                change = (current.score() - baseline.score()) / baseline.score();
+                final boolean higherIsBetter = current.higherIsBetter();
+                final boolean lower = current.upperBound() < baseline.lowerBound();
+                final boolean higher = current.lowerBound() > baseline.upperBound();
+                if ((higherIsBetter ? lower : higher) && Math.abs(change) > threshold) {
+                    status = Status.REGRESSION;
+                }
+                else if ((higherIsBetter ? higher : lower) && Math.abs(change) > threshold) {
+                    status = Status.IMPROVEMENT;
+                }
+                else {
+                    status = Status.UNCHANGED;
+                }
+            }
+        }
+
+        BenchmarkResult baseline() {
+            return baseline;
+        }
+
+        BenchmarkResult current() {
+            return current;
+        }
+
+        /**
+         * Returns the relative change of the score, or {@link Double#NaN} if there is nothing to
+         * compare.
+         */
+        double change() {
+            return change;
+        }
+
+        Status status() {
+            return status;
+        }
+    }
+}
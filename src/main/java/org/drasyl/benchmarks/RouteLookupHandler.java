@@ -0,0 +1,59 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import static java.util.Objects.requireNonNull;
+import static org.drasyl.benchmarks.RoutingTable.NO_ROUTE;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_DESTINATION_ADDRESS;
+
+/**
+ * Resolves the destination address of every inbound IP packet ({@link ByteBufHolder}, e.g. a TUN
+ * packet) by longest-prefix match. Routed packets are passed to the next handler, unroutable ones
+ * are dropped.
+ */
+public class RouteLookupHandler extends ChannelInboundHandlerAdapter {
+    private final RoutingTable table4;
+    private final RoutingTable table6;
+    private long droppedPackets;
+
+    public RouteLookupHandler(final RoutingTable table4, final RoutingTable table6) {
+        this.table4 = requireNonNull(table4);
+        this.table6 = requireNonNull(table6);
+    }
+
+    public long droppedPackets() {
+        return droppedPackets;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (msg instanceof ByteBufHolder) {
+            final ByteBuf content = ((ByteBufHolder) msg).content();
+            final int index = content.readerIndex();
+            final int version = content.getUnsignedByte(index) >> 4;
+            final int route;
+            if (version == 4) {
+                route = table4.lookup(content, index + INET4_DESTINATION_ADDRESS);
+            }
+            else if (version == 6) {
+                route = table6.lookup(content, index + INET6_DESTINATION_ADDRESS);
+            }
+            else {
+                route = NO_ROUTE;
+            }
+
+            if (route == NO_ROUTE) {
+                droppedPackets++;
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+}
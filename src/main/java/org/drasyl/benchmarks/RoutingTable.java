@@ -0,0 +1,35 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Maps IP prefixes to non-negative route values (e.g. peer indexes) and resolves addresses by
+ * longest-prefix match.
+ */
+public interface RoutingTable {
+    /**
+     * Returned by {@link #lookup(ByteBuf, int)} if no prefix matches.
+     */
+    int NO_ROUTE = -1;
+
+    /**
+     * Adds a route. A route already present for the same prefix is replaced.
+     *
+     * @param prefix       network address, 4 bytes for IPv4 or 16 bytes for IPv6
+     * @param prefixLength number of significant bits of {@code prefix}
+     * @param value        non-negative route value
+     */
+    void add(byte[] prefix, int prefixLength, int value);
+
+    /**
+     * Returns the value of the longest prefix matching the address located at {@code index} of
+     * {@code buf}, or {@link #NO_ROUTE}. Neither the reader index nor the writer index of
+     * {@code buf} is modified.
+     */
+    int lookup(ByteBuf buf, int index);
+
+    /**
+     * Returns the number of bytes of an address of this table's family.
+     */
+    int addressLength();
+}
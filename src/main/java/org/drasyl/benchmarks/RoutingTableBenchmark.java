@@ -0,0 +1,146 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+
+/**
+ * Compares longest-prefix-match lookup throughput and memory footprint of {@link LpmTrie} and
+ * {@link TreeMapRoutingTable} by table size. Destination addresses are read straight from
+ * IPv4/IPv6 packet headers. The heap occupied by the table is reported once per iteration as
+ * {@code footprint.heap} secondary result via {@link GaugeProfiler}. For the trie, its slot
+ * arrays ({@link LpmTrie#sizeInBytes()}) are reported as {@code footprint.trie} to cross-check
+ * the heap diff.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "NewClassNamingConvention", "JmhInspections"})
+public class RoutingTableBenchmark extends AbstractBenchmark {
+    private static final int PACKETS = 4096;
+    @Param({ "trie", "treemap" })
+    private String impl;
+    @Param({ "4", "6" })
+    private int family;
+    @Param({ "1000", "100000", "1000000" })
+    private int tableSize;
+    private RoutingTable table;
+    private ByteBuf[] packets;
+    private int addressIndex;
+    private int i;
+
+    @Setup
+    public void setup() {
+        try {
+            final long usedBefore = usedHeap();
+            table = newRoutingTable(impl, family == 4 ? 4 : 16);
+            addressIndex = family == 4 ? INET4_DESTINATION_ADDRESS : INET6_DESTINATION_ADDRESS;
+            populate(new Random(42));
+            GaugeProfiler.set("footprint.heap", usedHeap() - usedBefore, "B");
+            if (table instanceof LpmTrie) {
+                GaugeProfiler.set("footprint.trie", ((LpmTrie) table).sizeInBytes(), "B");
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        for (final ByteBuf packet : packets) {
+            packet.release();
+        }
+    }
+
+    @Override
+    protected String[] jvmArgs() {
+        // a trie with 1M IPv6 routes does not fit into the default heap
+        final String[] args = super.jvmArgs().clone();
+        for (int j = 0; j < args.length; j++) {
+            if (args[j].startsWith("-Xms") || args[j].startsWith("-Xmx")) {
+                args[j] = args[j].substring(0, 4) + "4g";
+            }
+        }
+        return args;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public int lookup() {
+        return table.lookup(packets[i++ & (PACKETS - 1)], addressIndex);
+    }
+
+    private void populate(final Random random) {
+        final byte[][] prefixes = addRandomRoutes(table, tableSize, random);
+
+        // packets destined to random hosts within the configured prefixes (at most /24 resp. /64)
+        packets = new ByteBuf[PACKETS];
+        for (int j = 0; j < PACKETS; j++) {
+            final byte[] address = prefixes[random.nextInt(prefixes.length)].clone();
+            for (int k = family == 4 ? 3 : 8; k < address.length; k++) {
+                address[k] = (byte) random.nextInt();
+            }
+            packets[j] = PooledByteBufAllocator.DEFAULT.directBuffer()
+                    .writeZero(family == 4 ? INET4_HEADER_LENGTH : INET6_HEADER_LENGTH)
+                    .setByte(0, family << 4)
+                    .setBytes(addressIndex, address);
+        }
+    }
+
+    static RoutingTable newRoutingTable(final String impl, final int addressLength) {
+        if ("trie".equals(impl)) {
+            return new LpmTrie(addressLength);
+        }
+        else if ("treemap".equals(impl)) {
+            return new TreeMapRoutingTable(addressLength);
+        }
+        else {
+            throw new IllegalArgumentException("Unknown routing table: " + impl);
+        }
+    }
+
+    /**
+     * Adds {@code count} random routes with a roughly internet-like prefix length distribution and
+     * returns their prefixes.
+     */
+    static byte[][] addRandomRoutes(final RoutingTable table, final int count, final Random random) {
+        final byte[][] prefixes = new byte[count][];
+        for (int j = 0; j < count; j++) {
+            final byte[] prefix = new byte[table.addressLength()];
+            random.nextBytes(prefix);
+            final int prefixLength;
+            if (table.addressLength() == 4) {
+                final int p = random.nextInt(10);
+                // ~60% /24, ~30% /16-/23, ~10% /8-/15
+                prefixLength = p < 6 ? 24 : (p < 9 ? 16 + random.nextInt(8) : 8 + random.nextInt(8));
+            }
+            else {
+                prefixLength = 32 + 8 * random.nextInt(5);
+            }
+            for (int bit = prefixLength; bit < prefix.length * 8; bit++) {
+                prefix[bit / 8] &= (byte) ~(0x80 >>> (bit % 8));
+            }
+            table.add(prefix, prefixLength, j);
+            prefixes[j] = prefix;
+        }
+        return prefixes;
+    }
+
+    private static long usedHeap() {
+        for (int j = 0; j < 3; j++) {
+            System.gc(); // NOSONAR
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,199 @@
+package org.drasyl.benchmarks;
+
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks the per-iteration samples of a soak run for trends. A linear regression is fitted over
+ * the iterations of each fork for the primary score and every {@link SoakProfiler} metric. A
+ * trend is a violation if its slope is significant (p-value below {@code alpha}) and points in
+ * the wrong direction, and the change over the whole run exceeds a threshold:
+ * <ul>
+ * <li>primary score: decays (for throughput, grows for time based modes) by more than
+ * {@code scoreThreshold} relative to its mean</li>
+ * <li>memory: grows by more than {@code memoryThreshold} bytes</li>
+ * </ul>
+ */
+final class SoakCheck {
+    private SoakCheck() {
+        // util class
+    }
+
+    /**
+     * Returns the trends of all metrics of all forks of {@code runResult}.
+     */
+    static List<Trend> analyze(final RunResult runResult,
+                               final double alpha,
+                               final double scoreThreshold,
+                               final double memoryThreshold) {
+        final BenchmarkResult summary = BenchmarkResult.of(runResult);
+        final List<Trend> trends = new ArrayList<>();
+        int fork = 0;
+        for (final org.openjdk.jmh.results.BenchmarkResult forkResult : runResult.getBenchmarkResults()) {
+            fork++;
+            final Map<String, List<Double>> samples = samples(forkResult.getIterationResults());
+            for (final Map.Entry<String, List<Double>> entry : samples.entrySet()) {
+                final boolean primary = entry.getKey().isEmpty();
+                trends.add(new Trend(summary, fork, primary ? "score" : entry.getKey(), entry.getValue(), alpha, primary ? summary.higherIsBetter() : null, primary ? scoreThreshold : memoryThreshold));
+            }
+        }
+        return trends;
+    }
+
+    /**
+     * Returns the samples of the primary score (key {@code ""}) and all {@link SoakProfiler}
+     * metrics, in iteration order.
+     */
+    static Map<String, List<Double>> samples(final Iterable<IterationResult> iterations) {
+        final Map<String, List<Double>> samples = new TreeMap<>();
+        for (final IterationResult iteration : iterations) {
+            samples.computeIfAbsent("", key -> new ArrayList<>()).add(iteration.getPrimaryResult().getScore());
+            for (final Map.Entry<String, Result> secondary : iteration.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().startsWith(SoakProfiler.PREFIX)) {
+                    samples.computeIfAbsent(secondary.getKey(), key -> new ArrayList<>()).add(secondary.getValue().getScore());
+                }
+            }
+        }
+        return samples;
+    }
+
+    static boolean hasViolation(final List<Trend> trends) {
+        for (final Trend trend : trends) {
+            if (trend.violation()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code trends} as markdown table.
+     */
+    static String toMarkdown(final List<Trend> trends) {
+        final StringBuilder markdown = new StringBuilder()
+                .append("| Benchmark | Params | Fork | Metric | Samples | First | Last | Change | p-value | Status |\n")
+                .append("|---|---|---:|---|---:|---:|---:|---:|---:|---|\n");
+        for (final Trend trend : trends) {
+            markdown.append("| ").append(trend.result().simpleBenchmark())
+                    .append(" | ").append(trend.result().paramsString())
+                    .append(" | ").append(trend.fork())
+                    .append(" | ").append(trend.metric())
+                    .append(" | ").append(trend.samples().size())
+                    .append(" | ").append(String.format("%.3f", trend.samples().get(0)))
+                    .append(" | ").append(String.format("%.3f", trend.samples().get(trend.samples().size() - 1)))
+                    .append(" | ").append(String.format("%+.3f", trend.change()))
+                    .append(" | ").append(Double.isNaN(trend.pValue()) ? "" : String.format("%.4f", trend.pValue()))
+                    .append(" | ").append(trend.violation() ? "**VIOLATION**" : "ok")
+                    .append(" |\n");
+        }
+        return markdown.toString();
+    }
+
+    /**
+     * Returns the samples of {@code trends} as CSV, one row per iteration.
+     */
+    static String toCsv(final List<Trend> trends) {
+        final StringBuilder csv = new StringBuilder("benchmark,params,fork,metric,iteration,value\n");
+        for (final Trend trend : trends) {
+            for (int i = 0; i < trend.samples().size(); i++) {
+                csv.append(trend.result().simpleBenchmark()).append(',')
+                        .append('"').append(trend.result().paramsString()).append("\",")
+                        .append(trend.fork()).append(',')
+                        .append(trend.metric()).append(',')
+                        .append(i + 1).append(',')
+                        .append(trend.samples().get(i)).append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    static final class Trend {
+        private final BenchmarkResult result;
+        private final int fork;
+        private final String metric;
+        private final List<Double> samples;
+        private final double change;
+        private final double pValue;
+        private final boolean violation;
+
+        /**
+         * @param higherIsBetter {@code null} for memory metrics, which must not grow
+         * @param threshold      relative change for scores, bytes for memory metrics
+         */
+        Trend(final BenchmarkResult result,
+              final int fork,
+              final String metric,
+              final List<Double> samples,
+              final double alpha,
+              final Boolean higherIsBetter,
+              final double threshold) {
+            this.result = result;
+            this.fork = fork;
+            this.metric = metric;
+            this.samples = samples;
+
+            final SimpleRegression regression = new SimpleRegression();
+            double sum = 0;
+            for (int i = 0; i < samples.size(); i++) {
+                regression.addData(i, samples.get(i));
+                sum += samples.get(i);
+            }
+            // change over the whole run according to the fitted line
+            final double slope = samples.size() < 2 ? 0 : regression.getSlope();
+            change = slope * (samples.size() - 1);
+            // NaN for less than three samples or constant samples
+            pValue = regression.getSignificance();
+            final boolean significant = pValue < alpha;
+
+            if (higherIsBetter == null) {
+                violation = significant && change > threshold;
+            }
+            else {
+                final double mean = sum / samples.size();
+                final double worse = higherIsBetter ? -change : change;
+                violation = significant && mean != 0 && worse / Math.abs(mean) > threshold;
+            }
+        }
+
+        BenchmarkResult result() {
+            return result;
+        }
+
+        int fork() {
+            return fork;
+        }
+
+        String metric() {
+            return metric;
+        }
+
+        List<Double> samples() {
+            return samples;
+        }
+
+        /**
+         * Returns the change over the whole run according to the fitted line.
+         */
+        double change() {
+            return change;
+        }
+
+        /**
+         * Returns the p-value of the slope, or {@link Double#NaN} if it cannot be computed.
+         */
+        double pValue() {
+            return pValue;
+        }
+
+        boolean violation() {
+            return violation;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JMH profiler sampling the memory footprint at the end of every iteration, used by the soak mode
+ * of {@link AbstractBenchmark} to detect leaks:
+ * <ul>
+ * <li>{@code soak.direct.netty}: {@link PlatformDependent#usedDirectMemory()} (only if Netty
+ * counts its direct memory itself)</li>
+ * <li>{@code soak.direct.jdk}: memory used by the JDK's direct buffer pool</li>
+ * <li>{@code soak.pooled.direct}/{@code soak.pooled.heap}: memory used by
+ * {@link ByteBufAllocator#DEFAULT} (if it provides metrics)</li>
+ * <li>{@code soak.heap}: heap used</li>
+ * </ul>
+ * All values are sampled after a full garbage collection.
+ */
+public class SoakProfiler implements InternalProfiler {
+    static final String PREFIX = "soak.";
+
+    @Override
+    public String getDescription() {
+        return "Direct memory, pooled allocator and heap usage after each iteration";
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams,
+                                final IterationParams iterationParams) {
+        // nothing to do
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams,
+                                                       final IterationParams iterationParams,
+                                                       final IterationResult result) {
+        // full GC, so only reachable objects (and direct buffers) are counted
+        System.gc();
+
+        final List<Result> results = new ArrayList<>();
+        if (PlatformDependent.usedDirectMemory() >= 0) {
+            results.add(bytes("direct.netty", PlatformDependent.usedDirectMemory()));
+        }
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                results.add(bytes("direct.jdk", pool.getMemoryUsed()));
+            }
+        }
+        if (ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider) {
+            final ByteBufAllocatorMetric metric = ((ByteBufAllocatorMetricProvider) ByteBufAllocator.DEFAULT).metric();
+            results.add(bytes("pooled.direct", metric.usedDirectMemory()));
+            results.add(bytes("pooled.heap", metric.usedHeapMemory()));
+        }
+        final long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        results.add(bytes("heap", heap));
+        return results;
+    }
+
+    private static Result bytes(final String label, final long value) {
+        return new ScalarResult(PREFIX + label, value, "B", AggregationPolicy.MAX);
+    }
+}
@@ -0,0 +1,270 @@
+package org.drasyl.benchmarks;
+
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Pairs the JMH JSON results of each JNA based benchmark class (e.g.
+ * {@code TunChannelReadBenchmark.json}) with its native counterpart (e.g.
+ * {@code NativeTunChannelReadBenchmark.json}) by benchmark method, mode and params, and writes
+ * the native-over-JNA speedups as {@code transport-comparison.csv}, {@code .md} and a
+ * self-contained {@code .html} chart.
+ * <p>
+ * Speedup intervals are derived from the score error intervals (99.9% by default) of both results
+ * by dividing their bounds, so they are conservative.
+ * <p>
+ * The report is updated after every benchmark class run with a report dir (result files still being
+ * written by concurrently running classes are skipped), and can be generated
+ * manually with
+ * {@code java -cp netty-tun-benchmarks.jar org.drasyl.benchmarks.TransportReport [reportDir]}
+ * ({@code reportDir} defaults to the {@code perfReportDir} system property).
+ */
+public final class TransportReport {
+    static final String NATIVE_PREFIX = "Native";
+    static final String FILE_NAME = "transport-comparison";
+
+    private TransportReport() {
+        // util class
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final String reportDir = args.length > 0 ? args[0] : SystemPropertyUtil.get("perfReportDir");
+        if (reportDir == null) {
+            System.err.println("Usage: TransportReport <reportDir>");
+            System.exit(1);
+            return;
+        }
+
+        System.out.println(toMarkdown(write(Paths.get(reportDir))));
+    }
+
+    /**
+     * Writes the report files for all pairs of results found in {@code dir} to {@code dir}.
+     *
+     * @return the pairs
+     */
+    static synchronized List<Pair> write(final Path dir) throws IOException {
+        final List<Pair> pairs = pairs(dir);
+        Files.write(dir.resolve(FILE_NAME + ".csv"), toCsv(pairs).getBytes(UTF_8));
+        Files.write(dir.resolve(FILE_NAME + ".md"), toMarkdown(pairs).getBytes(UTF_8));
+        Files.write(dir.resolve(FILE_NAME + ".html"), toHtml(pairs).getBytes(UTF_8));
+        return pairs;
+    }
+
+    /**
+     * Returns all pairs of results found in {@code dir}. Results without counterpart and empty or
+     * unreadable result files (e.g. of an aborted run) are ignored.
+     */
+    static List<Pair> pairs(final Path dir) throws IOException {
+        final List<Path> nativeFiles;
+        try (final Stream<Path> files = Files.list(dir)) {
+            nativeFiles = files.filter(file -> {
+                final String name = file.getFileName().toString();
+                return name.startsWith(NATIVE_PREFIX) && name.endsWith("Benchmark.json");
+            }).sorted().collect(Collectors.toList());
+        }
+
+        final List<Pair> pairs = new ArrayList<>();
+        for (final Path nativeFile : nativeFiles) {
+            final Path jnaFile = dir.resolve(nativeFile.getFileName().toString().substring(NATIVE_PREFIX.length()));
+            final List<BenchmarkResult> jnaFileResults = readIfComplete(jnaFile);
+            final List<BenchmarkResult> nativeFileResults = readIfComplete(nativeFile);
+            if (jnaFileResults == null || nativeFileResults == null) {
+                continue;
+            }
+
+            final Map<String, BenchmarkResult> jnaResults = new LinkedHashMap<>();
+            for (final BenchmarkResult result : jnaFileResults) {
+                jnaResults.put(pairKey(result), result);
+            }
+            for (final BenchmarkResult nativeResult : nativeFileResults) {
+                final BenchmarkResult jnaResult = jnaResults.get(pairKey(nativeResult));
+                if (jnaResult != null) {
+                    pairs.add(new Pair(jnaResult, nativeResult));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns the results of {@code file}, or {@code null} if it does not exist, is empty or cannot
+     * be read.
+     */
+    private static List<BenchmarkResult> readIfComplete(final Path file) {
+        try {
+            if (!Files.exists(file) || Files.size(file) == 0) {
+                return null;
+            }
+            return BenchmarkResult.read(file);
+        }
+        catch (final IOException e) {
+            System.out.println("Skipping " + file + " in transport comparison: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String pairKey(final BenchmarkResult result) {
+        final String simpleBenchmark = result.simpleBenchmark();
+        final String name = simpleBenchmark.startsWith(NATIVE_PREFIX) ? simpleBenchmark.substring(NATIVE_PREFIX.length()) : simpleBenchmark;
+        return name + ' ' + result.mode() + ' ' + result.params();
+    }
+
+    static String toCsv(final List<Pair> pairs) {
+        final StringBuilder csv = new StringBuilder("benchmark,params,mode,unit,jna_score,jna_error,native_score,native_error,speedup,speedup_lower,speedup_upper\n");
+        for (final Pair pair : pairs) {
+            csv.append(pair.name()).append(',')
+                    .append('"').append(pair.jna().paramsString()).append("\",")
+                    .append(pair.jna().mode()).append(',')
+                    .append(pair.jna().scoreUnit()).append(',')
+                    .append(pair.jna().score()).append(',')
+                    .append(pair.jna().scoreError()).append(',')
+                    .append(pair.nativeResult().score()).append(',')
+                    .append(pair.nativeResult().scoreError()).append(',')
+                    .append(pair.speedup()).append(',')
+                    .append(pair.speedupLowerBound()).append(',')
+                    .append(pair.speedupUpperBound()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    static String toMarkdown(final List<Pair> pairs) {
+        final StringBuilder markdown = new StringBuilder()
+                .append("| Benchmark | Params | Mode | JNA | Native | Speedup |\n")
+                .append("|---|---|---|---:|---:|---:|\n");
+        for (final Pair pair : pairs) {
+            markdown.append("| ").append(pair.name())
+                    .append(" | ").append(pair.jna().paramsString())
+                    .append(" | ").append(pair.jna().mode())
+                    .append(" | ").append(pair.jna().scoreString())
+                    .append(" | ").append(pair.nativeResult().scoreString())
+                    .append(" | ").append(pair.speedupString())
+                    .append(" |\n");
+        }
+        return markdown.toString();
+    }
+
+    /**
+     * Returns a self-contained HTML page with a bar chart of all speedups and their intervals.
+     */
+    static String toHtml(final List<Pair> pairs) {
+        final int labelWidth = 420;
+        final int chartWidth = 480;
+        final int rowHeight = 24;
+        double max = 2;
+        for (final Pair pair : pairs) {
+            max = Math.max(max, Double.isFinite(pair.speedupUpperBound()) ? pair.speedupUpperBound() : pair.speedup());
+        }
+        final double scale = chartWidth / Math.ceil(max);
+
+        final StringBuilder svg = new StringBuilder();
+        final int height = rowHeight * pairs.size() + 30;
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(labelWidth + chartWidth + 20)
+                .append("\" height=\"").append(height).append("\" font-family=\"sans-serif\" font-size=\"12\">\n");
+        for (int i = 0; i < pairs.size(); i++) {
+            final Pair pair = pairs.get(i);
+            final int y = i * rowHeight;
+            final double upper = Double.isFinite(pair.speedupUpperBound()) ? pair.speedupUpperBound() : Math.ceil(max);
+            svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">%s</text>%n", labelWidth - 6, y + 16, escape(pair.name() + " (" + pair.jna().paramsString() + ")")))
+                    .append(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%.1f\" height=\"%d\" fill=\"%s\"><title>%s</title></rect>%n", labelWidth, y + 4, pair.speedup() * scale, rowHeight - 8, pair.speedup() >= 1 ? "#4c9a2a" : "#c0392b", escape(pair.speedupString())))
+                    .append(String.format(Locale.ROOT, "<line x1=\"%.1f\" x2=\"%.1f\" y1=\"%d\" y2=\"%d\" stroke=\"black\"/>%n", labelWidth + pair.speedupLowerBound() * scale, labelWidth + upper * scale, y + rowHeight / 2, y + rowHeight / 2));
+        }
+        // speedup 1 (no difference) and axis labels
+        svg.append(String.format(Locale.ROOT, "<line x1=\"%.1f\" x2=\"%.1f\" y1=\"0\" y2=\"%d\" stroke=\"gray\" stroke-dasharray=\"4\"/>%n", labelWidth + scale, labelWidth + scale, height - 20));
+        for (int tick = 0; tick <= Math.ceil(max); tick++) {
+            svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%dx</text>%n", labelWidth + tick * scale, height - 6, tick));
+        }
+        svg.append("</svg>\n");
+
+        return "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Native vs. JNA TUN transport</title>\n"
+                + "<style>body { font-family: sans-serif; } table { border-collapse: collapse; } td, th { border: 1px solid #ccc; padding: 2px 6px; text-align: right; } td:first-child, th:first-child { text-align: left; }</style>\n"
+                + "</head>\n<body>\n<h1>Native vs. JNA TUN transport</h1>\n"
+                + "<p>Speedup of the native (epoll/kqueue) over the JNA based channel. Throughput speedups are native/JNA, time speedups JNA/native. Whiskers show the interval derived from both score error intervals.</p>\n"
+                + svg
+                + toHtmlTable(pairs)
+                + "</body>\n</html>\n";
+    }
+
+    private static String toHtmlTable(final List<Pair> pairs) {
+        final StringBuilder table = new StringBuilder("<table>\n<tr><th>Benchmark</th><th>Params</th><th>Mode</th><th>JNA</th><th>Native</th><th>Speedup</th></tr>\n");
+        for (final Pair pair : pairs) {
+            table.append("<tr><td>").append(escape(pair.name()))
+                    .append("</td><td>").append(escape(pair.jna().paramsString()))
+                    .append("</td><td>").append(escape(pair.jna().mode()))
+                    .append("</td><td>").append(escape(pair.jna().scoreString()))
+                    .append("</td><td>").append(escape(pair.nativeResult().scoreString()))
+                    .append("</td><td>").append(escape(pair.speedupString()))
+                    .append("</td></tr>\n");
+        }
+        return table.append("</table>\n").toString();
+    }
+
+    private static String escape(final String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    static final class Pair {
+        private final BenchmarkResult jna;
+        private final BenchmarkResult nativeResult;
+
+        Pair(final BenchmarkResult jna, final BenchmarkResult nativeResult) {
+            this.jna = jna;
+            this.nativeResult = nativeResult;
+        }
+
+        BenchmarkResult jna() {
+            return jna;
+        }
+
+        BenchmarkResult nativeResult() {
+            return nativeResult;
+        }
+
+        /**
+         * Returns the benchmark name of the JNA result, e.g. {@code TunChannelReadBenchmark.read}.
+         */
+        String name() {
+            return jna.simpleBenchmark();
+        }
+
+        /**
+         * Returns how many times faster the native transport is.
+         */
+        double speedup() {
+            return jna.higherIsBetter() ? nativeResult.score() / jna.score() : jna.score() / nativeResult.score();
+        }
+
+        double speedupLowerBound() {
+            return Math.max(0, jna.higherIsBetter() ? nativeResult.lowerBound() / jna.upperBound() : jna.lowerBound() / nativeResult.upperBound());
+        }
+
+        /**
+         * Returns the upper bound of {@link #speedup()}, {@link Double#POSITIVE_INFINITY} if the
+         * divisor's interval includes zero.
+         */
+        double speedupUpperBound() {
+            final double divisor = jna.higherIsBetter() ? jna.lowerBound() : nativeResult.lowerBound();
+            if (divisor <= 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return (jna.higherIsBetter() ? nativeResult.upperBound() : jna.upperBound()) / divisor;
+        }
+
+        String speedupString() {
+            return String.format(Locale.ROOT, "%.2fx [%.2f, %.2f]", speedup(), speedupLowerBound(), speedupUpperBound());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * {@link RoutingTable} baseline doing one {@link TreeMap} lookup per configured prefix length,
+ * longest first. Prefixes are compared on their upper 64 bits, so IPv6 prefixes must not be
+ * longer than {@code /64}.
+ */
+public final class TreeMapRoutingTable implements RoutingTable {
+    private final int addressLength;
+    // prefix length -> (masked network -> value), iterated longest prefix length first
+    private final NavigableMap<Integer, Map<Long, Integer>> routes = new TreeMap<Integer, Map<Long, Integer>>().descendingMap();
+
+    public TreeMapRoutingTable(final int addressLength) {
+        if (addressLength != 4 && addressLength != 16) {
+            throw new IllegalArgumentException("addressLength must be 4 (IPv4) or 16 (IPv6).");
+        }
+        this.addressLength = addressLength;
+    }
+
+    @Override
+    public void add(final byte[] prefix, final int prefixLength, final int value) {
+        if (prefix.length != addressLength) {
+            throw new IllegalArgumentException("prefix must be " + addressLength + " bytes long.");
+        }
+        if (prefixLength < 0 || prefixLength > Math.min(addressLength * 8, Long.SIZE)) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+
+        long bits = 0;
+        for (int i = 0; i < Math.min(addressLength, Long.BYTES); i++) {
+            bits = (bits << 8) | (prefix[i] & 0xff);
+        }
+        if (addressLength == 4) {
+            bits <<= 32;
+        }
+        routes.computeIfAbsent(prefixLength, k -> new TreeMap<>()).put(bits & mask(prefixLength), value);
+    }
+
+    @Override
+    public int lookup(final ByteBuf buf, final int index) {
+        final long bits = addressLength == 4 ? (buf.getUnsignedInt(index) << 32) : buf.getLong(index);
+        for (final Map.Entry<Integer, Map<Long, Integer>> entry : routes.entrySet()) {
+            final Integer value = entry.getValue().get(bits & mask(entry.getKey()));
+            if (value != null) {
+                return value;
+            }
+        }
+        return NO_ROUTE;
+    }
+
+    @Override
+    public int addressLength() {
+        return addressLength;
+    }
+
+    private static long mask(final int prefixLength) {
+        return prefixLength == 0 ? 0 : -1L << (Long.SIZE - prefixLength);
+    }
+}
@@ -0,0 +1,274 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.UnorderedThreadPoolEventExecutor;
+import org.drasyl.channel.tun.TunChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+
+/**
+ * Measures the cost of handing packets read by {@link TunChannel} over to an
+ * {@link EventExecutorGroup} worker pool. {@code depth} pass-through handlers sit behind the
+ * channel and are either run on the channel's event loop ({@code none}), bound to a
+ * {@link DefaultEventExecutorGroup} ({@code default}) or to an
+ * {@link UnorderedThreadPoolEventExecutor} ({@code unordered}), or receive all packets of a read
+ * loop as a single message bound to a {@link DefaultEventExecutorGroup} ({@code batch}).
+ * Consecutive handlers are bound to different executors of the worker pool, so every stage adds
+ * one handoff between threads (given at least two {@code workerThreads}).
+ * <p>
+ * Besides the packet rate, the mean latency from the channel's event loop to the end of the
+ * pipeline is reported once per iteration as {@code latencyNanos} via {@link GaugeProfiler}
+ * (sampled every {@link LatencyRecorder#SAMPLE_RATE} packets).
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "resource", "NewClassNamingConvention", "JmhInspections", "StatementWithEmptyBody"})
+public class TunChannelOffloadBenchmark extends AbstractBenchmark {
+    @Param({ "none", "default", "unordered", "batch" })
+    private String offload;
+    @Param({ "1", "4", "16" })
+    private int depth;
+    @Param({ "2" })
+    private int workerThreads;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private EventExecutorGroup workerGroup;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+    @Setup
+    public void setup() {
+        try {
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            group = new DefaultEventLoopGroup(1);
+            workerGroup = newWorkerGroup(offload, workerThreads);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    initPipeline(ch.pipeline(), offload, depth, workerGroup, latencyRecorder, receivedPackets);
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        latencyRecorder.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardownIteration() {
+        GaugeProfiler.set("latencyNanos", latencyRecorder.meanNanos(), "ns");
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+            if (workerGroup != null) {
+                workerGroup.shutdownGracefully().await();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void offload() {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        receivedPackets.getAndDecrement();
+    }
+
+    /**
+     * Returns the worker pool for the given {@code offload} mode, or {@code null} if all handlers
+     * run on the channel's event loop.
+     */
+    static EventExecutorGroup newWorkerGroup(final String offload, final int workerThreads) {
+        switch (offload) {
+            case "none":
+                return null;
+            case "default":
+            case "batch":
+                return new DefaultEventExecutorGroup(workerThreads);
+            case "unordered":
+                return new UnorderedThreadPoolEventExecutor(workerThreads);
+            default:
+                throw new IllegalArgumentException("Unknown offload mode: " + offload);
+        }
+    }
+
+    /**
+     * Adds the {@link LatencyRecorder}, {@code depth} {@link PassThroughHandler}s and a terminal
+     * handler counting and releasing all packets to {@code pipeline}. Handlers behind the
+     * recorder (and the {@link BatchHandler} in {@code batch} mode) are bound to
+     * {@code workerGroup}. Instead of pinning all of them to the same executor, each handler is
+     * bound to the group's next executor, so a {@link DefaultEventExecutorGroup} hands every packet
+     * over once per stage. An {@link UnorderedThreadPoolEventExecutor} hands over on every stage
+     * anyway, as it never considers the calling thread to be its own.
+     */
+    static void initPipeline(final ChannelPipeline pipeline,
+                             final String offload,
+                             final int depth,
+                             final EventExecutorGroup workerGroup,
+                             final LatencyRecorder latencyRecorder,
+                             final AtomicLong receivedPackets) {
+        pipeline.channel().config().setOption(ChannelOption.SINGLE_EVENTEXECUTOR_PER_GROUP, false);
+        pipeline.addLast(latencyRecorder);
+        if ("batch".equals(offload)) {
+            pipeline.addLast(new BatchHandler());
+        }
+        for (int i = 0; i < depth; i++) {
+            pipeline.addLast(workerGroup, new PassThroughHandler());
+        }
+        pipeline.addLast(workerGroup, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                if (msg instanceof List) {
+                    final List<?> batch = (List<?>) msg;
+                    for (int i = 0; i < batch.size(); i++) {
+                        received(batch.get(i));
+                    }
+                }
+                else {
+                    received(msg);
+                }
+            }
+
+            private void received(final Object msg) {
+                if (msg instanceof ByteBufHolder) {
+                    latencyRecorder.record(msg);
+                    ReferenceCountUtil.release(msg);
+                    receivedPackets.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Passes every message to the next handler.
+     */
+    static class PassThroughHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    /**
+     * Collects all messages of a read loop and passes them as a single {@link List} to the next
+     * handler once the read loop is complete. So packets are handed over to a worker pool only
+     * once per read loop.
+     */
+    static class BatchHandler extends ChannelInboundHandlerAdapter {
+        private List<Object> batch = new ArrayList<>();
+
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+            batch.add(msg);
+        }
+
+        @Override
+        public void channelReadComplete(final ChannelHandlerContext ctx) {
+            if (!batch.isEmpty()) {
+                final List<Object> readBatch = batch;
+                batch = new ArrayList<>(readBatch.size());
+                ctx.fireChannelRead(readBatch);
+            }
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void handlerRemoved(final ChannelHandlerContext ctx) {
+            batch.forEach(ReferenceCountUtil::release);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stamps every {@link #SAMPLE_RATE}th packet passing the channel's event loop and records the
+     * time until the packet is passed to {@link #record(Object)}. At most one packet is in flight,
+     * so no per-packet state has to be allocated. {@link #reset()} also drops the packet in flight,
+     * so a sampled packet that never reaches the end of the pipeline stops sampling only for the
+     * rest of the current iteration.
+     */
+    @Sharable
+    static class LatencyRecorder extends ChannelInboundHandlerAdapter {
+        static final int SAMPLE_RATE = 64;
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong samples = new AtomicLong();
+        private volatile Object sampledMsg;
+        private long sampledAt;
+        private int seq;
+
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+            if ((++seq & (SAMPLE_RATE - 1)) == 0 && sampledMsg == null) {
+                sampledAt = System.nanoTime();
+                sampledMsg = msg;
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        void record(final Object msg) {
+            if (msg == sampledMsg) {
+                totalNanos.addAndGet(System.nanoTime() - sampledAt);
+                samples.incrementAndGet();
+                sampledMsg = null;
+            }
+        }
+
+        long meanNanos() {
+            final long n = samples.get();
+            return n == 0 ? 0 : totalNanos.get() / n;
+        }
+
+        void reset() {
+            sampledMsg = null;
+            totalNanos.set(0);
+            samples.set(0);
+        }
+    }
+}
@@ -7,9 +7,11 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
@@ -25,18 +27,23 @@ import org.drasyl.channel.tun.jna.windows.WindowsTunDevice;
 import org.drasyl.channel.tun.jna.windows.Wintun.WINTUN_ADAPTER_HANDLE;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
 import java.net.PortUnreachableException;
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.UnaryOperator;
 
 import static io.netty.channel.ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE;
 import static java.util.Objects.requireNonNull;
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.exec;
 import static org.drasyl.channel.tun.jna.windows.Wintun.WintunGetAdapterLUID;
 
 @SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "resource", "NewClassNamingConvention", "JmhInspections", "StatementWithEmptyBody"})
@@ -48,70 +55,60 @@ public class TunChannelReadBenchmark extends AbstractBenchmark {
     private int writeThreads;
     @Param({ "1468" })
     private int packetSize;
+    // none: release packets untouched, raw: read headers in place, accessors: use packet accessors;
+    // the parsing variants are opt-in (-p headerParsing=raw,accessors or jmhParams) to keep baselines comparable
+    @Param({ "none" })
+    private String headerParsing;
+    // placement of the writer threads and the benchmark thread relative to the I/O thread, see CpuTopology
+    @Param({ "none" })
+    private String writerPlacement;
+    @Param({ "none" })
+    private String benchmarkPlacement;
     private EventLoopGroup writeGroup;
     private EventLoopGroup group;
     private ChannelGroup writeChannels;
     private Channel channel;
     private final AtomicLong receivedPackets = new AtomicLong();
+    private boolean parseRaw;
+    private boolean parseAccessors;
+    // sink for parsed header fields, only accessed by the event loop until it is shut down
+    private long headerDigest;
+    private BitSet benchmarkCpus;
 
     @Setup
-    public void setup() {
+    public void setup(final BenchmarkParams benchmarkParams) {
         try {
-            writeGroup = new NioEventLoopGroup(writeThreads);
-            group = new DefaultEventLoopGroup(1);
-
-            channel = new Bootstrap()
-                    .group(group)
-                    .channel(TunChannel.class)
-                    .handler(new ChannelInboundHandlerAdapter() {
-                        @Override
-                        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-                            if (msg instanceof Tun4Packet) {
-                                ((Tun4Packet) msg).release();
-                                receivedPackets.incrementAndGet();
-                            }
-                        }
-                    })
-                    .bind(new TunAddress())
-                    .sync()
-                    .channel();
-            final String name = ((TunAddress) channel.localAddress()).ifName();
-
-            if (PlatformDependent.isOsx()) {
-                exec("/sbin/ifconfig", name, "add", SRC_ADDRESS, SRC_ADDRESS);
-                exec("/sbin/ifconfig", name, "up");
-                exec("/sbin/route", "add", "-net", SRC_ADDRESS + '/' + 31, "-iface", name);
-            }
-            else if (PlatformDependent.isWindows()) {
-                // Windows
-                final WINTUN_ADAPTER_HANDLE adapter = ((WindowsTunDevice) ((TunChannel) channel).device()).adapter();
+            parseRaw = "raw".equals(headerParsing);
+            parseAccessors = "accessors".equals(headerParsing);
+            final BitSet ioCpus = CpuTopology.resolveAnchor(writerPlacement, benchmarkPlacement);
+            final BitSet writerCpus = CpuTopology.resolveCurrent(writerPlacement);
+            benchmarkCpus = CpuTopology.resolveCurrent(benchmarkPlacement);
+            CpuTopology.recordPlacement(benchmarkParams, ioCpus, writerCpus, benchmarkCpus);
+            writeGroup = new NioEventLoopGroup(writeThreads, CpuAffinity.threadFactory("writer", writerCpus));
+            group = new DefaultEventLoopGroup(1, CpuAffinity.threadFactory("io", ioCpus));
 
-                final Pointer interfaceLuid = new Memory(8);
-                WintunGetAdapterLUID(adapter, interfaceLuid);
-                AddressAndNetmaskHelper.setIPv4AndNetmask(interfaceLuid, SRC_ADDRESS, 31);
-            }
-            else {
-                // Linux
-                exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
-                exec("/sbin/ip", "link", "set", "dev", name, "up");
-            }
+            channel = bindTunChannel(group, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                    if (msg instanceof Tun4Packet) {
+                        parseHeaders((Tun4Packet) msg);
+                        ((Tun4Packet) msg).release();
+                        receivedPackets.incrementAndGet();
+                    }
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
 
-            final ByteBuf msg = Unpooled.wrappedBuffer(new byte[packetSize]);
-
-            final Bootstrap writeBootstrap = new Bootstrap()
-                    .group(writeGroup)
-                    .channel(NioDatagramChannel.class)
-                    .handler(new ChannelInitializer<>() {
-                        @Override
-                        protected void initChannel(final Channel ch) {
-                            ch.pipeline().addLast(new WriteHandler<>(msg));
-                        }
-                    });
-
-            writeChannels = new DefaultChannelGroup(writeGroup.next());
-            for (int i = 0; i < writeThreads; i++) {
-                msg.retain();
-                writeChannels.add(writeBootstrap.connect(DST_ADDRESS, PORT).sync().channel());
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        try {
+            if (!benchmarkCpus.isEmpty()) {
+                CpuAffinity.pin(benchmarkCpus);
             }
         }
         catch (final Exception e) {
@@ -120,13 +117,14 @@ public class TunChannelReadBenchmark extends AbstractBenchmark {
     }
 
     @TearDown
-    public void teardown() {
+    public void teardown(final Blackhole blackhole) {
         try {
-            writeChannels.forEach(ch -> ch.pipeline().get(WriteHandler.class).stopWriting());
-            writeChannels.close().await();
+            stopWriters(writeChannels);
             channel.close().await();
             writeGroup.shutdownGracefully().await();
             group.shutdownGracefully().await();
+            // the event loop has terminated, so its writes are visible here
+            blackhole.consume(headerDigest);
         }
         catch (final Exception e) {
             handleUnexpectedException(e);
@@ -142,6 +140,99 @@ public class TunChannelReadBenchmark extends AbstractBenchmark {
         receivedPackets.getAndDecrement();
     }
 
+    private void parseHeaders(final Tun4Packet packet) {
+        final ByteBuf content = packet.content();
+        final int index = content.readerIndex();
+        if (parseRaw) {
+            headerDigest += Ip4Header.version(content, index)
+                    ^ Ip4Header.sourceAddress(content, index)
+                    ^ Ip4Header.destinationAddress(content, index)
+                    ^ Ip4Header.protocol(content, index)
+                    ^ Ip4Header.sourcePort(content, index)
+                    ^ Ip4Header.destinationPort(content, index);
+        }
+        else if (parseAccessors) {
+            // only the accessors common to all TunPackets, protocol and ports are read in place
+            headerDigest += packet.version()
+                    ^ packet.sourceAddress().hashCode()
+                    ^ packet.destinationAddress().hashCode()
+                    ^ Ip4Header.protocol(content, index)
+                    ^ Ip4Header.sourcePort(content, index)
+                    ^ Ip4Header.destinationPort(content, index);
+        }
+    }
+
+    /**
+     * Binds a {@link TunChannel} with {@code handler} (e.g. a {@link ChannelInitializer}) to
+     * {@code group}, assigns {@code 10.10.10.10/31} to it and brings it up.
+     */
+    static Channel bindTunChannel(final EventLoopGroup group,
+                                  final ChannelHandler handler) throws InterruptedException, IOException {
+        final Channel channel = new Bootstrap()
+                .group(group)
+                .channel(TunChannel.class)
+                .handler(handler)
+                .bind(new TunAddress())
+                .sync()
+                .channel();
+        final String name = ((TunAddress) channel.localAddress()).ifName();
+
+        if (PlatformDependent.isOsx()) {
+            exec("/sbin/ifconfig", name, "add", SRC_ADDRESS, SRC_ADDRESS);
+            exec("/sbin/ifconfig", name, "up");
+            exec("/sbin/route", "add", "-net", SRC_ADDRESS + '/' + 31, "-iface", name);
+        }
+        else if (PlatformDependent.isWindows()) {
+            // Windows
+            final WINTUN_ADAPTER_HANDLE adapter = ((WindowsTunDevice) ((TunChannel) channel).device()).adapter();
+
+            final Pointer interfaceLuid = new Memory(8);
+            WintunGetAdapterLUID(adapter, interfaceLuid);
+            AddressAndNetmaskHelper.setIPv4AndNetmask(interfaceLuid, SRC_ADDRESS, 31);
+        }
+        else {
+            // Linux
+            exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
+            exec("/sbin/ip", "link", "set", "dev", name, "up");
+        }
+        return channel;
+    }
+
+    /**
+     * Connects {@code writeThreads} UDP channels on {@code writeGroup} to {@code 10.10.10.11},
+     * each writing {@code packetSize} bytes datagrams as fast as possible. These are routed through
+     * the TUN device bound by {@link #bindTunChannel}. The channels do not read, so datagrams sent
+     * back to them are dropped by the kernel once their receive buffers are full.
+     */
+    static ChannelGroup startWriters(final EventLoopGroup writeGroup,
+                                     final int writeThreads,
+                                     final int packetSize) throws InterruptedException {
+        final ByteBuf msg = Unpooled.wrappedBuffer(new byte[packetSize]);
+
+        final Bootstrap writeBootstrap = new Bootstrap()
+                .group(writeGroup)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.AUTO_READ, false)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        ch.pipeline().addLast(new WriteHandler<>(msg));
+                    }
+                });
+
+        final ChannelGroup writeChannels = new DefaultChannelGroup(writeGroup.next());
+        for (int i = 0; i < writeThreads; i++) {
+            msg.retain();
+            writeChannels.add(writeBootstrap.connect(DST_ADDRESS, PORT).sync().channel());
+        }
+        return writeChannels;
+    }
+
+    static void stopWriters(final ChannelGroup writeChannels) throws InterruptedException {
+        writeChannels.forEach(ch -> ch.pipeline().get(WriteHandler.class).stopWriting());
+        writeChannels.close().await();
+    }
+
     @SuppressWarnings({"unchecked", "CallToPrintStackTrace"})
     static class WriteHandler<E> extends ChannelDuplexHandler {
         private final E msg;
@@ -207,16 +298,4 @@ public class TunChannelReadBenchmark extends AbstractBenchmark {
             }
         }
     }
-
-    private static void exec(final String... command) throws IOException {
-        try {
-            final int exitCode = Runtime.getRuntime().exec(command).waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Executing `" + String.join(" ", command) + "` returned non-zero exit code (" + exitCode + ").");
-            }
-        }
-        catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
 }
@@ -0,0 +1,103 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.drasyl.channel.tun.TunChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+
+/**
+ * Measures the throughput of a longest-prefix-match route lookup placed directly behind
+ * {@link TunChannel} reads. The routing table holds {@code tableSize} random routes plus one for
+ * the benchmark packets.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "resource", "NewClassNamingConvention", "JmhInspections", "StatementWithEmptyBody"})
+public class TunChannelRouteBenchmark extends AbstractBenchmark {
+    private static final String SRC_ADDRESS = "10.10.10.10";
+    @Param({ "trie", "treemap" })
+    private String impl;
+    @Param({ "100000", "1000000" })
+    private int tableSize;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        try {
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            group = new DefaultEventLoopGroup(1);
+            final RoutingTable table4 = RoutingTableBenchmark.newRoutingTable(impl, 4);
+            RoutingTableBenchmark.addRandomRoutes(table4, tableSize, new Random(42));
+            table4.add(InetAddress.getByName(SRC_ADDRESS).getAddress(), 24, tableSize);
+            final RoutingTable table6 = RoutingTableBenchmark.newRoutingTable(impl, 16);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    ch.pipeline().addLast(new RouteLookupHandler(table4, table6));
+                    ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                            if (msg instanceof ByteBufHolder) {
+                                ((ByteBufHolder) msg).release();
+                                receivedPackets.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void route() {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        receivedPackets.getAndDecrement();
+    }
+}
@@ -0,0 +1,191 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import jdk.jfr.Recording;
+import org.drasyl.benchmarks.TunTelemetryHandler.ReadBatchEvent;
+import org.drasyl.benchmarks.TunTelemetryHandler.WritabilityStallEvent;
+import org.drasyl.benchmarks.TunTelemetryHandler.WriteFlushEvent;
+import org.drasyl.benchmarks.TunTelemetryHandler.WriteLatencyEvent;
+import org.drasyl.channel.tun.TunChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.bindTunChannel;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.startWriters;
+import static org.drasyl.benchmarks.TunChannelReadBenchmark.stopWriters;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+
+/**
+ * Measures the overhead of {@link TunTelemetryHandler}. UDP packets read by {@link TunChannel} are
+ * written back to it as replies to the writers, so both the read and the write path are
+ * instrumented. The writers do not read, so the kernel drops the replies once their receive
+ * buffers are full instead of routing them through the device again. The handler is either
+ * not added ({@code off}), added without a running recording ({@code disabled}), or added while an
+ * in-process recording of its events is running ({@code recording}).
+ * <p>
+ * Do not combine with {@code -DjfrRecording=true}, as its recording also enables the events in
+ * {@code disabled} mode.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "resource", "NewClassNamingConvention", "JmhInspections", "StatementWithEmptyBody"})
+public class TunChannelTelemetryBenchmark extends AbstractBenchmark {
+    private static final int UDP = 17;
+    @Param({ "off", "disabled", "recording" })
+    private String telemetry;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private Recording recording;
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        try {
+            recording = startRecording(telemetry);
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            group = new DefaultEventLoopGroup(1);
+
+            channel = bindTunChannel(group, new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    initPipeline(ch.pipeline(), telemetry, receivedPackets);
+                }
+            });
+            writeChannels = startWriters(writeGroup, writeThreads, packetSize);
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            stopWriters(writeChannels);
+            channel.close().await();
+            writeGroup.shutdownGracefully().await();
+            group.shutdownGracefully().await();
+            if (recording != null) {
+                recording.close();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void telemetry(final Blackhole blackhole) {
+        while (receivedPackets.get() < 1) {
+            // do nothing
+        }
+        blackhole.consume(receivedPackets.getAndDecrement());
+    }
+
+    /**
+     * Starts an in-memory recording of all {@link TunTelemetryHandler} events in
+     * {@code recording} mode. Returns {@code null} otherwise.
+     */
+    static Recording startRecording(final String telemetry) {
+        switch (telemetry) {
+            case "off":
+            case "disabled":
+                return null;
+            case "recording":
+                final Recording recording = new Recording();
+                recording.setToDisk(false);
+                recording.enable(ReadBatchEvent.class);
+                recording.enable(WriteFlushEvent.class);
+                recording.enable(WritabilityStallEvent.class);
+                recording.enable(WriteLatencyEvent.class);
+                recording.start();
+                return recording;
+            default:
+                throw new IllegalArgumentException("Unknown telemetry mode: " + telemetry);
+        }
+    }
+
+    /**
+     * Adds a {@link TunTelemetryHandler} (unless {@code telemetry} is {@code off}) and a handler
+     * writing all read IPv4 UDP packets back to the channel to {@code pipeline}, with source and
+     * destination swapped. Echoing them unchanged would make the kernel forward them back to the
+     * device if {@code net.ipv4.ip_forward} is enabled, so they would be counted until their TTL
+     * expires. Packets read while the channel is not writable are dropped, other packets are
+     * neither echoed nor counted.
+     */
+    static void initPipeline(final ChannelPipeline pipeline,
+                             final String telemetry,
+                             final AtomicLong receivedPackets) {
+        if (!"off".equals(telemetry)) {
+            pipeline.addLast(new TunTelemetryHandler());
+        }
+        pipeline.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                if (msg instanceof ByteBufHolder && isIpv4Udp(((ByteBufHolder) msg).content())) {
+                    if (ctx.channel().isWritable()) {
+                        swapEndpoints(((ByteBufHolder) msg).content());
+                        ctx.write(msg);
+                    }
+                    else {
+                        ReferenceCountUtil.release(msg);
+                    }
+                    receivedPackets.incrementAndGet();
+                }
+                else {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+
+            @Override
+            public void channelReadComplete(final ChannelHandlerContext ctx) {
+                ctx.flush();
+                ctx.fireChannelReadComplete();
+            }
+        });
+    }
+
+    private static boolean isIpv4Udp(final ByteBuf content) {
+        final int index = content.readerIndex();
+        return content.isReadable() && Ip4Header.version(content, index) == 4 && Ip4Header.protocol(content, index) == UDP;
+    }
+
+    /**
+     * Swaps source and destination address and port of the UDP packet in place. Neither the IPv4
+     * nor the UDP checksum change, as both are sums over the swapped fields.
+     */
+    private static void swapEndpoints(final ByteBuf content) {
+        final int index = content.readerIndex();
+        final int sourceAddress = Ip4Header.sourceAddress(content, index);
+        content.setInt(index + INET4_SOURCE_ADDRESS, Ip4Header.destinationAddress(content, index));
+        content.setInt(index + INET4_DESTINATION_ADDRESS, sourceAddress);
+        final int ports = index + Ip4Header.headerLength(content, index);
+        final int sourcePort = Ip4Header.sourcePort(content, index);
+        content.setShort(ports, Ip4Header.destinationPort(content, index));
+        content.setShort(ports + 2, sourcePort);
+    }
+}
@@ -17,10 +17,12 @@ import org.drasyl.channel.tun.TunChannel;
 import org.drasyl.channel.tun.TunPacket;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
 import org.openjdk.jmh.infra.Blackhole;
 import org.pcap4j.packet.IpV4Packet;
 import org.pcap4j.packet.IpV4Rfc791Tos;
@@ -31,6 +33,8 @@ import org.pcap4j.packet.namednumber.UdpPort;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.util.BitSet;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.UnaryOperator;
 
@@ -44,14 +48,22 @@ public class TunChannelWriteBenchmark extends AbstractBenchmark {
     private static final String DST_ADDRESS = "10.10.10.11";
     @Param({ "1468" })
     private int packetSize;
+    // placement of the benchmark thread relative to the I/O thread, which also writes, see CpuTopology
+    @Param({ "none" })
+    private String benchmarkPlacement;
     private EventLoopGroup group;
     private Channel channel;
     private WriteHandler<TunPacket> writeHandler;
+    private BitSet benchmarkCpus;
 
     @Setup
-    public void setup() {
+    public void setup(final BenchmarkParams benchmarkParams) {
         try {
-            group = new DefaultEventLoopGroup(1);
+            final BitSet ioCpus = CpuTopology.resolveAnchor(benchmarkPlacement);
+            benchmarkCpus = CpuTopology.resolveCurrent(benchmarkPlacement);
+            CpuTopology.recordPlacement(benchmarkParams, ioCpus, null, benchmarkCpus);
+            final ThreadFactory ioThreadFactory = CpuAffinity.threadFactory("io", ioCpus);
+            group = new DefaultEventLoopGroup(1, ioThreadFactory);
 
             channel = new Bootstrap()
                     .group(group)
@@ -99,6 +111,18 @@ public class TunChannelWriteBenchmark extends AbstractBenchmark {
         }
     }
 
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        try {
+            if (!benchmarkCpus.isEmpty()) {
+                CpuAffinity.pin(benchmarkCpus);
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
     @TearDown
     public void teardown() {
         try {
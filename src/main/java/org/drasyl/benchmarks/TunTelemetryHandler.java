@@ -0,0 +1,174 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits JFR events describing the hot path of a TUN channel. Has to be the first handler of the
+ * pipeline:
+ * <ul>
+ * <li>{@link ReadBatchEvent}: packets and bytes of each read loop</li>
+ * <li>{@link WriteFlushEvent}: packets and bytes written between two flushes</li>
+ * <li>{@link WritabilityStallEvent}: periods the channel was not writable</li>
+ * <li>{@link WriteLatencyEvent}: time from {@code write} until the packet has been written to
+ * the device, sampled every {@link #LATENCY_SAMPLE_RATE} packets</li>
+ * </ul>
+ * Per packet, only counters are updated. Events are only created if they are enabled in a running
+ * recording, so the handler can stay in the pipeline and be toggled with the recording settings
+ * (e.g. {@code org.drasyl.tun.ReadBatch#enabled=false}).
+ */
+@SuppressWarnings("java:S110")
+public class TunTelemetryHandler extends ChannelDuplexHandler {
+    static final int LATENCY_SAMPLE_RATE = 64;
+    private int readPackets;
+    private long readBytes;
+    private int writePackets;
+    private long writeBytes;
+    private int writeSeq;
+    private WriteLatencyEvent latencyEvent;
+    private WritabilityStallEvent stallEvent;
+    private final ChannelFutureListener latencyListener = future -> {
+        final WriteLatencyEvent event = latencyEvent;
+        latencyEvent = null;
+        if (event != null && future.isSuccess()) {
+            event.commit();
+        }
+    };
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        readPackets++;
+        readBytes += bytes(msg);
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext ctx) {
+        if (readPackets > 0) {
+            final ReadBatchEvent event = new ReadBatchEvent();
+            if (event.shouldCommit()) {
+                event.packets = readPackets;
+                event.bytes = readBytes;
+                event.commit();
+            }
+            readPackets = 0;
+            readBytes = 0;
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx,
+                      final Object msg,
+                      final ChannelPromise promise) {
+        writePackets++;
+        writeBytes += bytes(msg);
+        if (++writeSeq % LATENCY_SAMPLE_RATE == 0 && latencyEvent == null && !promise.isVoid()) {
+            final WriteLatencyEvent event = new WriteLatencyEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                latencyEvent = event;
+                promise.addListener(latencyListener);
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx) {
+        if (writePackets > 0) {
+            final WriteFlushEvent event = new WriteFlushEvent();
+            if (event.shouldCommit()) {
+                event.packets = writePackets;
+                event.bytes = writeBytes;
+                event.commit();
+            }
+            writePackets = 0;
+            writeBytes = 0;
+        }
+        ctx.flush();
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+        if (!ctx.channel().isWritable()) {
+            final WritabilityStallEvent event = new WritabilityStallEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                event.bytesBeforeWritable = ctx.channel().bytesBeforeWritable();
+                stallEvent = event;
+            }
+        }
+        else if (stallEvent != null) {
+            stallEvent.commit();
+            stallEvent = null;
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    private static long bytes(final Object msg) {
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        else if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        return 0;
+    }
+
+    @Name("org.drasyl.tun.ReadBatch")
+    @Label("TUN Read Batch")
+    @Description("Packets read from a TUN device within one read loop")
+    @Category({ "drasyl", "TUN" })
+    @StackTrace(false)
+    public static class ReadBatchEvent extends Event {
+        @Label("Packets")
+        int packets;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.drasyl.tun.WriteFlush")
+    @Label("TUN Write Flush")
+    @Description("Packets written to a TUN device between two flushes")
+    @Category({ "drasyl", "TUN" })
+    @StackTrace(false)
+    public static class WriteFlushEvent extends Event {
+        @Label("Packets")
+        int packets;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.drasyl.tun.WritabilityStall")
+    @Label("TUN Writability Stall")
+    @Description("Period a TUN channel was not writable")
+    @Category({ "drasyl", "TUN" })
+    @StackTrace(false)
+    public static class WritabilityStallEvent extends Event {
+        @Label("Bytes Before Writable")
+        @DataAmount
+        long bytesBeforeWritable;
+    }
+
+    @Name("org.drasyl.tun.WriteLatency")
+    @Label("TUN Write Latency")
+    @Description("Time from writing a packet to the channel until it has been written to the TUN device")
+    @Category({ "drasyl", "TUN" })
+    @StackTrace(false)
+    public static class WriteLatencyEvent extends Event {
+    }
+}
@@ -0,0 +1,301 @@
+package org.drasyl.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.Tun6Packet;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.jna.AbstractTunDevice;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * {@code java.lang.foreign} based Linux TUN device. Unlike the JNA based
+ * {@link org.drasyl.channel.tun.jna.linux.LinuxTunDevice}, {@code read(2)} and {@code write(2)}
+ * are invoked through downcall handles directly on the memory backing (pooled) direct
+ * {@link ByteBuf}s, without any per-call marshalling.
+ */
+@SuppressWarnings({"java:S112", "java:S1192"})
+public final class ForeignTunDevice extends AbstractTunDevice {
+    private static final int O_RDWR = 2;
+    private static final int AF_INET = 2;
+    private static final int SOCK_DGRAM = 2;
+    private static final short IFF_TUN = 0x0001;
+    private static final short IFF_NO_PI = 0x1000;
+    private static final long TUNSETIFF = 0x400454caL;
+    private static final long SIOCGIFMTU = 0x8921L;
+    private static final long SIOCSIFMTU = 0x8922L;
+    private static final int IFNAMSIZ = 16;
+    // struct ifreq { char ifr_name[IFNAMSIZ]; union { short ifru_flags; int ifru_mtu; ... } }
+    private static final long IFREQ_SIZE = 40;
+    private static final long IFREQ_IFRU = IFNAMSIZ;
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final StructLayout CAPTURE_STATE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET = CAPTURE_STATE_LAYOUT.byteOffset(groupElement("errno"));
+    private static final Linker.Option CAPTURE_ERRNO = Linker.Option.captureCallState("errno");
+    private static final MethodHandle OPEN = downcall("open", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), CAPTURE_ERRNO);
+    private static final MethodHandle SOCKET = downcall("socket", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT), CAPTURE_ERRNO);
+    private static final MethodHandle IOCTL = downcall("ioctl", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, ADDRESS), Linker.Option.firstVariadicArg(2), CAPTURE_ERRNO);
+    private static final MethodHandle READ = downcall("read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), CAPTURE_ERRNO);
+    private static final MethodHandle WRITE = downcall("write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), CAPTURE_ERRNO);
+    private static final MethodHandle CLOSE = downcall("close", FunctionDescriptor.of(JAVA_INT, JAVA_INT));
+    private static final IllegalArgumentException ILLEGAL_NAME_EXCEPTION = new IllegalArgumentException("Device name must be an ASCII string shorter than 16 characters or null.");
+    private final int fd;
+    private final int mtu;
+    // errno capture segments are only touched by the thread performing the call
+    private final ThreadLocal<MemorySegment> captureState = ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(CAPTURE_STATE_LAYOUT));
+    private volatile boolean closed;
+
+    private ForeignTunDevice(final int fd, final int mtu, final TunAddress localAddress) {
+        super(localAddress);
+        this.fd = fd;
+        this.mtu = mtu;
+    }
+
+    public static ForeignTunDevice open(final String ifName, final int mtu) throws IOException {
+        final String name = ifName != null && ifName.isEmpty() ? null : ifName;
+        if (name != null && (name.length() >= IFNAMSIZ || !StandardCharsets.US_ASCII.newEncoder().canEncode(name))) {
+            throw ILLEGAL_NAME_EXCEPTION;
+        }
+
+        try (final Arena arena = Arena.ofConfined()) {
+            final MemorySegment captured = arena.allocate(CAPTURE_STATE_LAYOUT);
+
+            final int fd = (int) OPEN.invokeExact(captured, cString(arena, "/dev/net/tun"), O_RDWR);
+            if (fd == -1) {
+                throw new IOException("Create an endpoint for communication failed (errno " + errno(captured) + ").");
+            }
+
+            final MemorySegment ifreq = arena.allocate(IFREQ_SIZE, 8);
+            if (name != null) {
+                MemorySegment.copy(name.getBytes(StandardCharsets.US_ASCII), 0, ifreq, JAVA_BYTE, 0, name.length());
+            }
+            ifreq.set(JAVA_SHORT, IFREQ_IFRU, (short) (IFF_TUN | IFF_NO_PI));
+            if ((int) IOCTL.invokeExact(captured, fd, TUNSETIFF, ifreq) == -1) {
+                final int errno = errno(captured);
+                close(fd);
+                throw new IOException("Creating TUN device failed (errno " + errno + ").");
+            }
+            final String actualName = ifName(ifreq);
+
+            final int socket = (int) SOCKET.invokeExact(captured, AF_INET, SOCK_DGRAM, 0);
+            if (socket == -1) {
+                final int errno = errno(captured);
+                close(fd);
+                throw new IOException("Create an endpoint for communication failed (errno " + errno + ").");
+            }
+            try {
+                ifreq.fill((byte) 0);
+                MemorySegment.copy(actualName.getBytes(StandardCharsets.US_ASCII), 0, ifreq, JAVA_BYTE, 0, actualName.length());
+                if (mtu != 0) {
+                    ifreq.set(JAVA_INT, IFREQ_IFRU, mtu);
+                    if ((int) IOCTL.invokeExact(captured, socket, SIOCSIFMTU, ifreq) == -1) {
+                        final int errno = errno(captured);
+                        close(fd);
+                        throw new IOException("Setting MTU of TUN device failed (errno " + errno + ").");
+                    }
+                }
+                else if ((int) IOCTL.invokeExact(captured, socket, SIOCGIFMTU, ifreq) == -1) {
+                    final int errno = errno(captured);
+                    close(fd);
+                    throw new IOException("Getting MTU of TUN device failed (errno " + errno + ").");
+                }
+                return new ForeignTunDevice(fd, ifreq.get(JAVA_INT, IFREQ_IFRU), new TunAddress(actualName));
+            }
+            finally {
+                close(socket);
+            }
+        }
+        catch (final IOException e) {
+            throw e;
+        }
+        catch (final Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    public int mtu() {
+        return mtu;
+    }
+
+    @Override
+    public TunPacket readPacket(final ByteBufAllocator alloc) throws IOException {
+        if (closed) {
+            throw new IOException("Device is closed.");
+        }
+
+        final ByteBuf buf = alloc.directBuffer(mtu);
+        try {
+            read(buf);
+        }
+        catch (final IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+
+        final int version = Byte.toUnsignedInt(buf.getByte(buf.readerIndex())) >> 4;
+        if (version == 4) {
+            return new Tun4Packet(buf);
+        }
+        else if (version == 6) {
+            return new Tun6Packet(buf);
+        }
+        else {
+            buf.release();
+            throw new IOException("Unknown internet protocol: " + version);
+        }
+    }
+
+    /**
+     * Reads the next packet into the writable bytes of the direct {@code buf}, which must have room
+     * for {@link #mtu()} bytes. Unlike {@link #readPacket(ByteBufAllocator)}, this allows reading
+     * into reused buffers (e.g. of a {@link RecyclableTun4Packet}).
+     *
+     * @return the number of bytes read
+     */
+    public int read(final ByteBuf buf) throws IOException {
+        if (closed) {
+            throw new IOException("Device is closed.");
+        }
+
+        try {
+            final MemorySegment captured = captureState.get();
+            final long bytesRead = (long) READ.invokeExact(captured, fd, segment(buf, buf.writerIndex(), mtu), (long) mtu);
+            if (bytesRead == -1) {
+                throw new IOException("Reading from TUN device failed (errno " + errno(captured) + ").");
+            }
+            buf.writerIndex(buf.writerIndex() + (int) bytesRead);
+            return (int) bytesRead;
+        }
+        catch (final IOException | RuntimeException e) {
+            throw e;
+        }
+        catch (final Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
+        if (closed) {
+            msg.release();
+            throw new IOException("Device is closed.");
+        }
+
+        ByteBuf buf = msg.content();
+        if (!buf.isDirect()) {
+            buf = alloc.directBuffer(buf.readableBytes()).writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+        }
+        try {
+            final MemorySegment captured = captureState.get();
+            final int length = buf.readableBytes();
+            final long bytesWritten = (long) WRITE.invokeExact(captured, fd, segment(buf, buf.readerIndex(), length), (long) length);
+            if (bytesWritten == -1) {
+                throw new IOException("Writing to TUN device failed (errno " + errno(captured) + ").");
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            throw e;
+        }
+        catch (final Throwable e) {
+            throw new IOException(e);
+        }
+        finally {
+            if (buf != msg.content()) {
+                buf.release();
+            }
+            msg.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            close(fd);
+        }
+    }
+
+    /**
+     * Returns the {@code jvmArgs} required by forks using this device.
+     */
+    static String[] jvmArgs(final String[] baseJvmArgs) {
+        final String[] args;
+        if (Runtime.version().feature() == 21) {
+            // java.lang.foreign is a preview API on Java 21
+            args = Arrays.copyOf(baseJvmArgs, baseJvmArgs.length + 2);
+            args[args.length - 1] = "--enable-preview";
+        }
+        else {
+            args = Arrays.copyOf(baseJvmArgs, baseJvmArgs.length + 1);
+        }
+        args[baseJvmArgs.length] = "--enable-native-access=ALL-UNNAMED";
+        return args;
+    }
+
+    /**
+     * Returns a zero-length segment pointing at {@code index} of {@code buf}. Passing it as
+     * {@code ADDRESS} argument needs no bounds, so no restricted {@code reinterpret} is required.
+     */
+    private static MemorySegment segment(final ByteBuf buf, final int index, final int length) {
+        if (buf.hasMemoryAddress()) {
+            return MemorySegment.ofAddress(buf.memoryAddress() + index);
+        }
+        else {
+            return MemorySegment.ofBuffer(buf.internalNioBuffer(index, length));
+        }
+    }
+
+    private static String ifName(final MemorySegment ifreq) {
+        final byte[] name = ifreq.asSlice(0, IFNAMSIZ).toArray(JAVA_BYTE);
+        int length = 0;
+        while (length < name.length && name[length] != 0) {
+            length++;
+        }
+        return new String(name, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static MemorySegment cString(final Arena arena, final String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        final MemorySegment segment = arena.allocate(bytes.length + 1L, 1);
+        MemorySegment.copy(bytes, 0, segment, JAVA_BYTE, 0, bytes.length);
+        segment.set(JAVA_BYTE, bytes.length, (byte) 0);
+        return segment;
+    }
+
+    private static void close(final int fd) throws IOException {
+        try {
+            final int ignored = (int) CLOSE.invokeExact(fd);
+        }
+        catch (final Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int errno(final MemorySegment captured) {
+        return captured.get(JAVA_INT, ERRNO_OFFSET);
+    }
+
+    private static MethodHandle downcall(final String name,
+                                         final FunctionDescriptor descriptor,
+                                         final Linker.Option... options) {
+        final MemorySegment symbol = LINKER.defaultLookup().find(name).orElseThrow(() -> new UnsatisfiedLinkError("Symbol `" + name + "` not found."));
+        return LINKER.downcallHandle(symbol, descriptor, options);
+    }
+}
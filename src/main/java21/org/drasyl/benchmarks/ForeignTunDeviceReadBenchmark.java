@@ -0,0 +1,221 @@
+package org.drasyl.benchmarks;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollTunChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.Tun4Packet;
+import io.netty.channel.socket.TunAddress;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.Recycler;
+import io.netty.util.internal.PlatformDependent;
+import org.drasyl.benchmarks.TunChannelReadBenchmark.WriteHandler;
+import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.exec;
+
+/**
+ * Compares the per-call overhead of reading from a Linux TUN device through JNA
+ * ({@link LinuxTunDevice}), {@code java.lang.foreign} ({@link ForeignTunDevice}) and the native
+ * {@link EpollTunChannel}. Small packet sizes are included, as this is where call overhead
+ * dominates. The {@code jna} and {@code ffm} devices are drained by a dedicated reader thread,
+ * {@code ffm-recycled} reads into {@link RecyclableTun4Packet}s and allocates nothing per packet.
+ * The allocations per packet are reported as {@code gc.alloc.rate.norm}.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "DataFlowIssue", "JmhInspections", "NewClassNamingConvention", "StatementWithEmptyBody"})
+public class ForeignTunDeviceReadBenchmark extends AbstractBenchmark {
+    private static final String SRC_ADDRESS = "10.10.10.10";
+    private static final String DST_ADDRESS = "10.10.10.11";
+    private static final int PORT = 12345;
+    // ffm-recycled: reads into recycled packets instead of allocating a new buffer and wrapper per packet
+    @Param({ "jna", "ffm", "ffm-recycled", "epoll" })
+    private String transport;
+    @Param({ "1" })
+    private int writeThreads;
+    @Param({ "64", "128", "512", "1468" })
+    private int packetSize;
+    private EventLoopGroup writeGroup;
+    private EventLoopGroup group;
+    private ChannelGroup writeChannels;
+    private Channel channel;
+    private TunDevice device;
+    private Thread readThread;
+    private volatile boolean stopReading;
+    // failure of the reader thread, rethrown by the benchmark thread instead of waiting forever
+    private volatile Throwable readFailure;
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        try {
+            if (!"linux".equals(PlatformDependent.normalizedOs())) {
+                throw new RuntimeException("Unsupported platform: TUN device benchmarks require Linux");
+            }
+
+            writeGroup = new NioEventLoopGroup(writeThreads);
+            final String name;
+            if ("epoll".equals(transport)) {
+                if (!Epoll.isAvailable()) {
+                    throw new RuntimeException("Unsupported platform: epoll is not available");
+                }
+                group = new EpollEventLoopGroup(1);
+                channel = new Bootstrap()
+                        .group(group)
+                        .channel(EpollTunChannel.class)
+                        .handler(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                                if (msg instanceof Tun4Packet) {
+                                    ((Tun4Packet) msg).release();
+                                    receivedPackets.incrementAndGet();
+                                }
+                            }
+                        })
+                        .bind(new TunAddress())
+                        .sync()
+                        .channel();
+                name = ((TunAddress) channel.localAddress()).ifName();
+            }
+            else {
+                device = "jna".equals(transport) ? LinuxTunDevice.open(null, 0) : ForeignTunDevice.open(null, 0);
+                name = device.localAddress().ifName();
+                readThread = new Thread(this::doRead, "tun-reader");
+                readThread.start();
+            }
+
+            exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
+            exec("/sbin/ip", "link", "set", "dev", name, "up");
+
+            final ByteBuf msg = Unpooled.wrappedBuffer(new byte[packetSize]);
+
+            final Bootstrap writeBootstrap = new Bootstrap()
+                    .group(writeGroup)
+                    .channel(NioDatagramChannel.class)
+                    .handler(new ChannelInitializer<>() {
+                        @Override
+                        protected void initChannel(final Channel ch) {
+                            ch.pipeline().addLast(new WriteHandler<>(msg));
+                        }
+                    });
+
+            writeChannels = new DefaultChannelGroup(writeGroup.next());
+            for (int i = 0; i < writeThreads; i++) {
+                msg.retain();
+                writeChannels.add(writeBootstrap.connect(DST_ADDRESS, PORT).sync().channel());
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            if (readThread != null) {
+                // writers are still running, so the blocking read will return
+                stopReading = true;
+                readThread.join();
+                if (readFailure != null) {
+                    throw new IOException("Reading from TUN device failed", readFailure);
+                }
+            }
+            writeChannels.forEach(ch -> ch.pipeline().get(WriteHandler.class).stopWriting());
+            writeChannels.close().await();
+            if (channel != null) {
+                channel.close().await();
+                group.shutdownGracefully().await();
+            }
+            else {
+                device.close();
+            }
+            writeGroup.shutdownGracefully().await();
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Override
+    protected boolean profileGc() {
+        return true;
+    }
+
+    @Override
+    protected String[] jvmArgs() {
+        return ForeignTunDevice.jvmArgs(super.jvmArgs());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void read() {
+        while (receivedPackets.get() < 1) {
+            if (readFailure != null) {
+                throw new IllegalStateException("Reading from TUN device failed", readFailure);
+            }
+        }
+        receivedPackets.getAndDecrement();
+    }
+
+    private void doRead() {
+        if ("ffm-recycled".equals(transport)) {
+            doReadRecycled();
+            return;
+        }
+
+        final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+        try {
+            while (!stopReading) {
+                final TunPacket packet = device.readPacket(alloc);
+                if (packet instanceof org.drasyl.channel.tun.Tun4Packet) {
+                    receivedPackets.incrementAndGet();
+                }
+                packet.release();
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            readFailure = e;
+        }
+    }
+
+    private void doReadRecycled() {
+        final ForeignTunDevice foreignDevice = (ForeignTunDevice) device;
+        final Recycler<RecyclableTun4Packet> recycler = RecyclableTun4Packet.newRecycler(foreignDevice.mtu());
+        try {
+            while (!stopReading) {
+                final RecyclableTun4Packet packet = recycler.get();
+                foreignDevice.read(packet.content());
+                if (packet.version() == 4) {
+                    receivedPackets.incrementAndGet();
+                }
+                packet.release();
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            readFailure = e;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.drasyl.benchmarks;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollTunChannel;
+import io.netty.channel.socket.TunAddress;
+import io.netty.util.internal.PlatformDependent;
+import org.drasyl.benchmarks.TunChannelWriteBenchmark.WriteHandler;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.UdpPort;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.benchmarks.NativeTunChannelReadBenchmark.exec;
+import static org.pcap4j.packet.namednumber.IpVersion.IPV4;
+
+/**
+ * Compares the per-call overhead of writing to a Linux TUN device through JNA
+ * ({@link LinuxTunDevice}), {@code java.lang.foreign} ({@link ForeignTunDevice}) and the native
+ * {@link EpollTunChannel}. Small packet sizes are included, as this is where call overhead
+ * dominates. The {@code jna} and {@code ffm} devices are driven by a dedicated writer thread.
+ */
+@SuppressWarnings({"java:S112", "java:S2142", "java:S3077", "DataFlowIssue", "NewClassNamingConvention", "JmhInspections", "StatementWithEmptyBody"})
+public class ForeignTunDeviceWriteBenchmark extends AbstractBenchmark {
+    private static final String SRC_ADDRESS = "10.10.10.10";
+    private static final String DST_ADDRESS = "10.10.10.11";
+    @Param({ "jna", "ffm", "epoll" })
+    private String transport;
+    @Param({ "64", "128", "512", "1468" })
+    private int packetSize;
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private EventLoopGroup group;
+    private Channel channel;
+    private WriteHandler<io.netty.channel.socket.TunPacket> writeHandler;
+    private TunDevice device;
+    private Thread writeThread;
+    private volatile boolean stopWriting;
+    // failure of the writer thread, rethrown by the benchmark thread instead of waiting forever
+    private volatile Throwable writeFailure;
+
+    @Setup
+    public void setup() {
+        try {
+            if (!"linux".equals(PlatformDependent.normalizedOs())) {
+                throw new RuntimeException("Unsupported platform: TUN device benchmarks require Linux");
+            }
+
+            final byte[] packet = ipPacket(packetSize);
+            final String name;
+            if ("epoll".equals(transport)) {
+                if (!Epoll.isAvailable()) {
+                    throw new RuntimeException("Unsupported platform: epoll is not available");
+                }
+                group = new EpollEventLoopGroup(1);
+                channel = new Bootstrap()
+                        .group(group)
+                        .channel(EpollTunChannel.class)
+                        .handler(new ChannelInboundHandlerAdapter())
+                        .bind(new TunAddress())
+                        .sync()
+                        .channel();
+                name = ((TunAddress) channel.localAddress()).ifName();
+            }
+            else {
+                device = "ffm".equals(transport) ? ForeignTunDevice.open(null, 0) : LinuxTunDevice.open(null, 0);
+                name = device.localAddress().ifName();
+            }
+
+            exec("/sbin/ip", "addr", "add", SRC_ADDRESS + '/' + 31, "dev", name);
+            exec("/sbin/ip", "link", "set", "dev", name, "up");
+
+            if (channel != null) {
+                final io.netty.channel.socket.Tun4Packet msg = new io.netty.channel.socket.Tun4Packet(directBuffer(packet));
+                writeHandler = new WriteHandler<>(messagesWritten, msg, oldPacket -> new io.netty.channel.socket.Tun4Packet(oldPacket.content().retainedDuplicate()));
+                channel.pipeline().addLast(writeHandler);
+            }
+            else {
+                final Tun4Packet msg = new Tun4Packet(directBuffer(packet));
+                writeThread = new Thread(() -> doWrite(msg), "tun-writer");
+                writeThread.start();
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try {
+            if (channel != null) {
+                writeHandler.stopWriting();
+                channel.close().await();
+                group.shutdownGracefully().await();
+            }
+            else {
+                stopWriting = true;
+                writeThread.join();
+                device.close();
+                if (writeFailure != null) {
+                    throw new IOException("Writing to TUN device failed", writeFailure);
+                }
+            }
+        }
+        catch (final Exception e) {
+            handleUnexpectedException(e);
+        }
+    }
+
+    @Override
+    protected String[] jvmArgs() {
+        return ForeignTunDevice.jvmArgs(super.jvmArgs());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void write(final Blackhole blackhole) {
+        while (messagesWritten.get() < 1) {
+            if (writeFailure != null) {
+                throw new IllegalStateException("Writing to TUN device failed", writeFailure);
+            }
+        }
+        blackhole.consume(messagesWritten.getAndDecrement());
+    }
+
+    private void doWrite(final Tun4Packet msg) {
+        final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+        try {
+            while (!stopWriting) {
+                device.writePacket(alloc, new Tun4Packet(msg.content().retainedDuplicate()));
+                messagesWritten.getAndIncrement();
+            }
+        }
+        catch (final IOException | RuntimeException e) {
+            writeFailure = e;
+        }
+        finally {
+            msg.release();
+        }
+    }
+
+    private static ByteBuf directBuffer(final byte[] packet) {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(packet.length).writeBytes(packet);
+    }
+
+    private static byte[] ipPacket(final int packetSize) throws UnknownHostException {
+        final IpV4Packet.Builder packetBuilder = new IpV4Packet.Builder();
+        packetBuilder.version(IPV4)
+                .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                .identification((short) 100)
+                .ttl((byte) 100)
+                .protocol(IpNumber.UDP)
+                .srcAddr((Inet4Address) InetAddress.getByName(SRC_ADDRESS))
+                .dstAddr((Inet4Address) InetAddress.getByName(DST_ADDRESS))
+                .payloadBuilder(new UdpPacket.Builder()
+                        .srcPort(new UdpPort((short) 12345, "udp"))
+                        .dstPort(new UdpPort((short) 12345, "udp"))
+                        .payloadBuilder(new UnknownPacket.Builder().rawData(new byte[packetSize]))
+                        .correctLengthAtBuild(true)
+                )
+                .correctChecksumAtBuild(true)
+                .correctLengthAtBuild(true);
+        return packetBuilder.build().getRawData();
+    }
+}